@@ -1,48 +1,288 @@
 import javax.swing.text.html.HTMLDocument.HTMLReader.IsindexAction;
 
 import javafx.animation.KeyValue;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+import java.util.function.BiPredicate;
+import java.util.function.Consumer;
+
+//Each list is a plain linked list of nodes. When one list gets long
+//(a bad hash, or lots of edges out of one host) an ordered tree of its
+//nodes is built next to it, so finding a key costs O(log n) instead of
+//walking the whole list. The linked list is still the real storage, so
+//getAllPairs() and getStorage() see the same thing either way. The tree
+//is dropped again once the list shrinks.
+//
+//iterator(), spliterator(), forEach(), pairs() and values() walk the
+//nodes in place; use them instead of getAllPairs()/getAllValues() when
+//nothing needs a copy.
+
 /**
  * ALOP class.
  * @param <K> is key
  * @param <V> is value
  */
-public class ArrayOfListsOfPairs<K,V> {
+public class ArrayOfListsOfPairs<K,V> implements Iterable<KeyValuePair<K,V>> {
+	/**
+	 * a list gets a tree once it is longer than this.
+	 */
+	private static final int TREEIFY_THRESHOLD = 8;
+	/**
+	 * a list loses its tree once it is shorter than this.
+	 */
+	private static final int UNTREEIFY_THRESHOLD = 6;
+	
+	/**
+	 * Orders keys by hash code, then by compareTo when both keys are
+	 * Comparable and of the same class. Keys that still tie share one
+	 * tree entry, and the nodes under that entry are checked with equals.
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private static final Comparator<Object> KEY_ORDER = (a, b) -> {
+		int ha = a.hashCode();
+		int hb = b.hashCode();
+		if (ha != hb) {
+			return ha < hb ? -1 : 1;
+		}
+		if (a instanceof Comparable && a.getClass() == b.getClass()) {
+			return ((Comparable) a).compareTo(b);
+		}
+		return 0;
+	};
+	
 	/**
 	 * internal structure.
 	 */
 	private Node<K,V>[] storage;
+	/**
+	 * last node of each list. This and the next two arrays start
+	 * empty and are sized to match storage by fitLists().
+	 */
+	private Node<K,V>[] tails = newNodes(0);
+	/**
+	 * number of nodes in each list.
+	 */
+	private int[] lengths = new int[0];
+	/**
+	 * tree of the nodes of each long list, null for short lists.
+	 */
+	private TreeMap<K,ArrayList<Node<K,V>>>[] trees = newTrees(0);
+	/**
+	 * number of nodes in all lists.
+	 */
+	private int size;
 	
 	/**
-	 * getter for array .
+	 * make an array of list heads or tails.
+	 * @param <K> is key
+	 * @param <V> is value
+	 * @param length of the array
+	 * @return array of nulls
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private static <K,V> Node<K,V>[] newNodes(int length) {
+		return (Node<K,V>[]) new Node[length];
+	}
+	
+	/**
+	 * make an array of list trees.
+	 * @param <K> is key
+	 * @param <V> is value
+	 * @param length of the array
+	 * @return array of nulls
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private static <K,V> TreeMap<K,ArrayList<Node<K,V>>>[] newTrees(int length) {
+		return (TreeMap<K,ArrayList<Node<K,V>>>[]) new TreeMap[length];
+	}
+	
+	/**
+	 * grow the tails, lengths and trees arrays to one slot per list.
+	 */
+	private void fitLists() {
+		if (lengths.length < storage.length) {
+			tails = java.util.Arrays.copyOf(tails, storage.length);
+			lengths = java.util.Arrays.copyOf(lengths, storage.length);
+			trees = java.util.Arrays.copyOf(trees, storage.length);
+		}
+	}
+	
+	/**
+	 * getter for array. Use clearList() rather than writing
+	 * into it, so the list lengths and trees stay in sync.
 	 * @return storage aka arrays of linked list
 	 */
 	public Node<K,V>[] getStorage(){
 		return storage;
 	}
+	
+	/**
+	 * Number of pairs in one list.
+	 * @param index of the list
+	 * @return length of the list
+	 */
+	public int getListLength(int index) {
+		fitLists();
+		return lengths[index];
+	}
+	
+	/**
+	 * Number of pairs in all lists.
+	 * @return total number of pairs
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Whether a list currently has a tree next to it.
+	 * @param index of the list
+	 * @return true if the list is treeified
+	 */
+	public boolean isTreeified(int index) {
+		fitLists();
+		return trees[index] != null;
+	}
+	
+	/**
+	 * first node in a list with the given key.
+	 * @param index of the list
+	 * @param key to find
+	 * @return the node, or null
+	 */
+	private Node<K,V> find(int index, K key) {
+		fitLists();
+		if (trees[index] != null) {
+			ArrayList<Node<K,V>> group = trees[index].get(key);
+			if (group != null) {
+				for (Node<K,V> n : group) {
+					if (n.pair.getKey().equals(key)) {
+						return n;
+					}
+				}
+			}
+			return null;
+		}
+		for (Node<K,V> n = storage[index]; n != null; n = n.next) {
+			if (n.pair.getKey().equals(key)) {
+				return n;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * put a node into the tree of a list.
+	 * @param tree of the list
+	 * @param n node to add
+	 */
+	private void treeAdd(TreeMap<K,ArrayList<Node<K,V>>> tree, Node<K,V> n) {
+		tree.computeIfAbsent(n.pair.getKey(), k -> new ArrayList<>(1)).add(n);
+	}
+	
+	/**
+	 * build the tree of a list.
+	 * @param index of the list
+	 */
+	@SuppressWarnings("unchecked")
+	private void treeify(int index) {
+		TreeMap<K,ArrayList<Node<K,V>>> tree = new TreeMap<>((Comparator<? super K>) KEY_ORDER);
+		for (Node<K,V> n = storage[index]; n != null; n = n.next) {
+			treeAdd(tree, n);
+		}
+		trees[index] = tree;
+	}
+	
+	/**
+	 * unlink a node from a list.
+	 * @param index of the list
+	 * @param previous node before it, null if it's the head
+	 * @param current node to unlink
+	 */
+	private void unlink(int index, Node<K,V> previous, Node<K,V> current) {
+		if (previous == null) {
+			storage[index] = current.next;
+		}
+		else {
+			previous.next = current.next;
+		}
+		if (tails[index] == current) {
+			tails[index] = previous;
+		}
+		lengths[index]--;
+		size--;
+		if (trees[index] != null) {
+			if (lengths[index] < UNTREEIFY_THRESHOLD) {
+				trees[index] = null;
+			}
+			else {
+				ArrayList<Node<K,V>> group = trees[index].get(current.pair.getKey());
+				group.remove(current);
+				if (group.isEmpty()) {
+					trees[index].remove(current.pair.getKey());
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Makes room for more lists. Existing lists keep their index.
+	 * Never shrinks.
+	 * @param numLists new number of lists
+	 */
+	public void growLists(int numLists) {
+		if (numLists <= storage.length) {
+			return;
+		}
+		storage = java.util.Arrays.copyOf(storage, numLists);
+		fitLists();
+	}
+	
+	/**
+	 * Empties one list.
+	 * @param index of the list
+	 */
+	public void clearList(int index) {
+		fitLists();
+		size -= lengths[index];
+		storage[index] = null;
+		tails[index] = null;
+		lengths[index] = 0;
+		trees[index] = null;
+	}
 
 	/**
-	 *  add new node in.
+	 *  add new node in at the end of the list.
 	 * @param index to add
 	 * @param k is key
 	 * @param v is value
 	 * @return true if added
 	 */
 	public boolean add(int index, K k, V v){
-		KeyValuePair<K,V> kvp = new KeyValuePair<>(k,v);
+		fitLists();
+		Node<K,V> n = new Node<>(new KeyValuePair<>(k,v));
 		if (storage[index] == null) {
-			storage[index] = new Node<>(kvp);
-			return true;
+			storage[index] = n;
 		}
-		Node<K,V> current = storage[index];
-		while(current != null) {
-			if (current.next == null) {
-				current.next = new Node<>(kvp);
-				return true;
-			}				
-			current = current.next;	
-
+		else {
+			tails[index].next = n;
+		}
+		tails[index] = n;
+		lengths[index]++;
+		size++;
+		if (trees[index] != null) {
+			treeAdd(trees[index], n);
 		}
-		return false;
+		else if (lengths[index] > TREEIFY_THRESHOLD) {
+			treeify(index);
+		}
+		return true;
 	}
 
 	/**
@@ -54,45 +294,51 @@ public class ArrayOfListsOfPairs<K,V> {
 	public boolean remove(int index, K key) {
 		Node<K,V> current = storage[index];
 		Node<K,V> previous = null;
+		while (current != null && !current.pair.getKey().equals(key)) {
+			previous = current;
+			current = current.next;
+		}
 		if (current == null) {
 			return false;
 		}
-		while (!current.pair.getKey().equals(key)) {
+		unlink(index, previous, current);
+		return true;
+	}
+
+	/**
+	 * remove the first pair in one list with the given value.
+	 * @param index of the list
+	 * @param v value to remove
+	 * @return true if a pair was removed
+	 */
+	public boolean removeValue(int index, V v) {
+		Node<K,V> current = storage[index];
+		Node<K,V> previous = null;
+		while (current != null && !current.pair.getValue().equals(v)) {
 			previous = current;
 			current = current.next;
 		}
-		previous.next = current.next;
+		if (current == null) {
+			return false;
+		}
+		unlink(index, previous, current);
 		return true;
 	}
 
 	/**
-	 * replace kvp with new value.
+	 * replace kvp with new value. The node stays where it is in
+	 * the list and only gets a new pair.
 	 * @param index to replace
 	 * @param key is key
 	 * @param value is new value
 	 * @return true if replaced, false otherwise
 	 */
 	public boolean replace(int index, K key, V value){
-		Node<K,V> current = storage[index];
-		KeyValuePair<K,V> kvp = new KeyValuePair<>(key, value);
-		Node<K,V> newNode = new Node<>(kvp);
-		if (current == null) {
+		Node<K,V> n = find(index, key);
+		if (n == null) {
 			return false;
 		}
-		Node<K,V> previous = current;
-		current = current.next;
-		// current is null
-		if (previous.pair.getKey().equals(key)) {
-			storage[index] = newNode;
-			return true;
-		}
-		while (current!=null) {
-			if (current.pair.getKey().equals(key)) {
-				previous.next = newNode;
-				newNode.next = current.next;
-				return true;
-			}
-		}
+		n.pair = new KeyValuePair<>(n.pair.getKey(), value);
 		return true;
 	}
 	/**
@@ -102,17 +348,7 @@ public class ArrayOfListsOfPairs<K,V> {
 	 * @return true if replaced, false otherwise
 	 */
 	public boolean containKey(int index, K key) {
-		if (storage[index] == null) {
-			return false;
-		}
-		Node<K,V> current = storage[index];
-		while (current!=null) {
-			if (current.pair.getKey().equals(key)) {
-				return true;
-			}
-			current = current.next;
-		}
-		return false;
+		return find(index, key) != null;
 	}
 	/**
 	 * get key value.
@@ -121,88 +357,272 @@ public class ArrayOfListsOfPairs<K,V> {
 	 * @return value of key
 	 */
 	public V getKey(int index, K key) {
-		if (storage[index] == null) {
-			return null;
-		}
-		Node<K,V> current = storage[index];
-		while (current!=null) {
-			if (current.pair.getKey().equals(key)) {
-				return current.pair.getValue();
-			}
-			current = current.next;
-		}
-		return null;
+		Node<K,V> n = find(index, key);
+		return n == null ? null : n.pair.getValue();
 	}
 	/**
-	 * remove value.
+	 * remove every pair with the given value, from every list.
 	 * @param v to remove
 	 * @return true if removed, false otherwise
 	 */
 	public boolean removeValue(V v) {
-		Node<K,V> head;
+		boolean removed = false;
 		for(int i = 0; i < storage.length; i++) {
-			head = storage[i];
-			if (storage[i]==null) {
-				continue;
-			}
-			else if(head.pair.getValue().equals(v)){
-				if(head.next!=null){
-					storage[i]=head.next;
+			Node<K,V> previous = null;
+			Node<K,V> current = storage[i];
+			while (current != null) {
+				if (current.pair.getValue().equals(v)) {
+					unlink(i, previous, current);
+					removed = true;
 				}
-				else{
-					storage[i]=null;
+				else {
+					previous = current;
 				}
+				current = current.next;
 			}
-			else{
-				Node<K,V> previous=head;
-				Node<K,V> current=head.next;
-				while (current!=null) {
-					if(current.pair.getValue().equals(v)){
-						previous.next=current.next;
-					}
-					previous=current;
-					current=current.next;
-				}
-			}
-			
 		}
-		return true;
+		return removed;
 	}
 	/**
-	 * remove key.
+	 * remove every pair with the given key, from every list.
 	 * @param k to remove
 	 * @return true if removed, false otherwise
 	 */
 	public boolean removeKey(K k) {
-		Node<K,V> head;
+		boolean removed = false;
 		for(int i = 0; i < storage.length; i++) {
-			head = storage[i];
-			if (storage[i]==null) {
-				continue;
+			Node<K,V> previous = null;
+			Node<K,V> current = storage[i];
+			while (current != null) {
+				if (current.pair.getKey().equals(k)) {
+					unlink(i, previous, current);
+					removed = true;
+				}
+				else {
+					previous = current;
+				}
+				current = current.next;
 			}
-			else if(head.pair.getKey().equals(k)){
-				if(head.next!=null){
-					storage[i]=head.next;
+		}
+		return removed;
+	}
+	/**
+	 * remove every pair of one list that matches, in a single walk of the list.
+	 * @param index of the list
+	 * @param filter true for pairs to remove
+	 * @return number of pairs removed
+	 */
+	public int removeIf(int index, BiPredicate<? super K, ? super V> filter) {
+		int removed = 0;
+		Node<K,V> previous = null;
+		Node<K,V> current = storage[index];
+		while (current != null) {
+			if (filter.test(current.pair.getKey(), current.pair.getValue())) {
+				unlink(index, previous, current);
+				removed++;
+			}
+			else {
+				previous = current;
+			}
+			current = current.next;
+		}
+		return removed;
+	}
+	/**
+	 * Calls action on every pair of one list, in list order, without copying.
+	 * @param listId index of the list
+	 * @param action gets each key and value
+	 */
+	public void forEach(int listId, BiConsumer<? super K, ? super V> action) {
+		for (Node<K,V> n = storage[listId]; n != null; n = n.next) {
+			action.accept(n.pair.getKey(), n.pair.getValue());
+		}
+	}
+	
+	/**
+	 * Calls action on every pair of every list, without copying.
+	 * @param action gets each key and value
+	 */
+	public void forEach(BiConsumer<? super K, ? super V> action) {
+		for (int i = 0; i < storage.length; i++) {
+			forEach(i, action);
+		}
+	}
+	
+	/**
+	 * Iterates over every pair in place, list by list.
+	 * Changing the lists while iterating is not supported.
+	 * @return iterator over the pairs
+	 */
+	@Override
+	public Iterator<KeyValuePair<K,V>> iterator() {
+		return new Iterator<KeyValuePair<K,V>>() {
+			private int index = 0;
+			private Node<K,V> next = advance(null);
+			
+			private Node<K,V> advance(Node<K,V> n) {
+				n = (n == null) ? null : n.next;
+				while (n == null && index < storage.length) {
+					n = storage[index++];
 				}
-				else{
-					storage[i]=null;
+				return n;
+			}
+			
+			@Override
+			public boolean hasNext() {
+				return next != null;
+			}
+			
+			@Override
+			public KeyValuePair<K,V> next() {
+				if (next == null) {
+					throw new NoSuchElementException();
 				}
+				Node<K,V> n = next;
+				next = advance(n);
+				return n.pair;
+			}
+		};
+	}
+	
+	/**
+	 * Splits by ranges of lists, for use with streams.
+	 * @return spliterator over the pairs
+	 */
+	@Override
+	public Spliterator<KeyValuePair<K,V>> spliterator() {
+		return new PairSpliterator<>(storage, 0, storage.length, null, size);
+	}
+	
+	/**
+	 * A live, read only view of every pair, backed by the lists.
+	 * @return collection view of the pairs
+	 */
+	public java.util.Collection<KeyValuePair<K,V>> pairs() {
+		return new java.util.AbstractCollection<KeyValuePair<K,V>>() {
+			@Override
+			public Iterator<KeyValuePair<K,V>> iterator() {
+				return ArrayOfListsOfPairs.this.iterator();
 			}
-			else{
-				Node<K,V> previous=head;
-				Node<K,V> current=head.next;
-				while (current!=null) {
-					if(current.pair.getKey().equals(k)){
-						previous.next=current.next;
+			
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+	}
+	
+	/**
+	 * A live, read only view of every value, backed by the lists.
+	 * @return collection view of the values
+	 */
+	public java.util.Collection<V> values() {
+		return new java.util.AbstractCollection<V>() {
+			@Override
+			public Iterator<V> iterator() {
+				Iterator<KeyValuePair<K,V>> pairs = ArrayOfListsOfPairs.this.iterator();
+				return new Iterator<V>() {
+					@Override
+					public boolean hasNext() {
+						return pairs.hasNext();
 					}
-					previous=current;
-					current=current.next;
-				}
+					
+					@Override
+					public V next() {
+						return pairs.next().getValue();
+					}
+				};
 			}
 			
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+	}
+	
+	/**
+	 * Spliterator over a range of lists. Splitting hands the first
+	 * half of the remaining lists (and the list in progress) to the
+	 * new spliterator, so encounter order is kept.
+	 * @param <K> is key
+	 * @param <V> is value
+	 */
+	private static final class PairSpliterator<K,V> implements Spliterator<KeyValuePair<K,V>> {
+		/**
+		 * the lists.
+		 */
+		private final Node<K,V>[] lists;
+		/**
+		 * next list to start.
+		 */
+		private int index;
+		/**
+		 * one past the last list.
+		 */
+		private final int fence;
+		/**
+		 * next node of the list in progress.
+		 */
+		private Node<K,V> current;
+		/**
+		 * estimated number of pairs left.
+		 */
+		private long estimate;
+		
+		/**
+		 * constructor.
+		 * @param lists the lists
+		 * @param index first list
+		 * @param fence one past the last list
+		 * @param current node in progress, or null
+		 * @param estimate number of pairs
+		 */
+		PairSpliterator(Node<K,V>[] lists, int index, int fence, Node<K,V> current, long estimate) {
+			this.lists = lists;
+			this.index = index;
+			this.fence = fence;
+			this.current = current;
+			this.estimate = estimate;
+		}
+		
+		@Override
+		public boolean tryAdvance(Consumer<? super KeyValuePair<K,V>> action) {
+			while (current == null && index < fence) {
+				current = lists[index++];
+			}
+			if (current == null) {
+				return false;
+			}
+			action.accept(current.pair);
+			current = current.next;
+			return true;
+		}
+		
+		@Override
+		public Spliterator<KeyValuePair<K,V>> trySplit() {
+			int mid = (index + fence) >>> 1;
+			if (mid <= index) {
+				return null;
+			}
+			estimate >>>= 1;
+			PairSpliterator<K,V> prefix = new PairSpliterator<>(lists, index, mid, current, estimate);
+			index = mid;
+			current = null;
+			return prefix;
+		}
+		
+		@Override
+		public long estimateSize() {
+			return estimate;
+		}
+		
+		@Override
+		public int characteristics() {
+			return Spliterator.ORDERED | Spliterator.NONNULL;
 		}
-		return true;
 	}
+	
 	//--------------------------------------------------------
 	// testing code goes here... edit this as much as you want!
 	//--------------------------------------------------------
@@ -221,7 +641,36 @@ public class ArrayOfListsOfPairs<K,V> {
 	 * @param args for any main method
 	 */	
 	public static void main(String[] args) {
+		//everything lands in list 0, so it gets a tree and then loses it
+		ArrayOfListsOfPairs<Integer,String> alop = new ArrayOfListsOfPairs<>(1);
+		for (int i = 0; i < 20; i++) {
+			alop.add(0, i, "v" + i);
+		}
+		boolean ok = alop.isTreeified(0) && "v7".equals(alop.getKey(0, 7));
+		ok &= alop.replace(0, 19, "last") && "last".equals(alop.getAllPairs(0).get(19).getValue());
+		for (int i = 0; i < 16; i++) {
+			alop.remove(0, i);
+		}
+		ok &= !alop.isTreeified(0) && alop.getListLength(0) == 4 && alop.containKey(0, 18);
+		ok &= alop.getAllPairs(0).size() == 4;
 		
+		//iteration in place matches the copies
+		ArrayOfListsOfPairs<Integer,Integer> many = new ArrayOfListsOfPairs<>(7);
+		for (int i = 0; i < 100; i++) {
+			many.add(i % 7, i, i * i);
+		}
+		int[] sum = new int[1];
+		many.forEach((k, v) -> sum[0] += v);
+		int iterated = 0;
+		for (KeyValuePair<Integer,Integer> pair : many) {
+			iterated += pair.getValue();
+		}
+		long streamed = java.util.stream.StreamSupport.stream(many.spliterator(), true)
+			.mapToLong(KeyValuePair::getValue).sum();
+		ok &= sum[0] == 328350 && iterated == sum[0] && streamed == sum[0];
+		ok &= many.values().size() == 100 && many.getAllValues().equals(new ArrayList<>(many.values()));
+		ok &= many.getAllPairs().equals(new ArrayList<>(many.pairs()));
+		System.out.println(ok ? "Yay" : "Boo");
 	}
 	
 	
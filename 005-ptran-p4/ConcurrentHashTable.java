@@ -0,0 +1,372 @@
+//Thread safe hash table with separate chaining. Writers lock one of a
+//fixed set of "stripes" (each stripe covers every bucket whose index has
+//the same low bits), so writers to different bucket groups don't block
+//each other. Readers never lock: bucket heads live in an atomic array and
+//nodes only ever get new "next"/"value" through volatile writes, so a
+//reader sees either the old or the new chain, never a half-spliced one.
+//Growing locks every stripe and copies the nodes into a new array, leaving
+//the old array untouched for readers that are still walking it.
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * lock striped hash table, same api as HashTable.
+ * @param <K> is key
+ * @param <V> is value
+ */
+public class ConcurrentHashTable<K,V> {
+	/**
+	 * This is the minimum number of slots in the hash table.
+	 */
+	private static final int MIN_SLOTS = 16;
+
+	/**
+	 * number of locks, a power of two no bigger than MIN_SLOTS.
+	 */
+	private static final int STRIPES = 16;
+
+	/**
+	 * one entry in a chain.
+	 * @param <K> is key
+	 * @param <V> is value
+	 */
+	private static class Node<K,V> {
+		/**
+		 * key, never changes.
+		 */
+		final K key;
+		/**
+		 * mixed hash of the key.
+		 */
+		final int hash;
+		/**
+		 * value, replaced in place.
+		 */
+		volatile V value;
+		/**
+		 * next node in the chain.
+		 */
+		volatile Node<K,V> next;
+
+		/**
+		 * constructor.
+		 * @param key of entry
+		 * @param hash of key
+		 * @param value of entry
+		 * @param next node
+		 */
+		Node(K key, int hash, V value, Node<K,V> next) {
+			this.key = key;
+			this.hash = hash;
+			this.value = value;
+			this.next = next;
+		}
+	}
+
+	/**
+	 * bucket heads. replaced as a whole when growing.
+	 */
+	private volatile AtomicReferenceArray<Node<K,V>> table;
+	/**
+	 * stripe locks, bucket i is guarded by locks[i % STRIPES]. Since there
+	 * are never fewer slots than stripes, that is the same as hash % STRIPES.
+	 */
+	private final ReentrantLock[] locks;
+	/**
+	 * number of entries.
+	 */
+	private final LongAdder tableSize = new LongAdder();
+
+	/**
+	 * The number of slots is rounded up to a power of two (at least the minimum).
+	 * @param numSlots to initialize
+	 */
+	public ConcurrentHashTable(int numSlots) {
+		this.table = new AtomicReferenceArray<>(slotsFor(numSlots));
+		this.locks = new ReentrantLock[STRIPES];
+		for (int i = 0; i < STRIPES; i++) {
+			this.locks[i] = new ReentrantLock();
+		}
+	}
+
+	/**
+	 * round a requested size up to a power of two.
+	 * @param numSlots requested
+	 * @return number of slots to use
+	 */
+	private static int slotsFor(int numSlots) {
+		if (numSlots <= MIN_SLOTS) {
+			return MIN_SLOTS;
+		}
+		return Integer.highestOneBit(numSlots - 1) << 1;
+	}
+
+	/**
+	 * murmur3 finalizer, same as HashTable's power of two mode.
+	 * @param key to hash
+	 * @return mixed hash
+	 */
+	private static int hash(Object key) {
+		int h = key.hashCode();
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
+	}
+
+	/**
+	 * find a node without locking.
+	 * @param tab table to look in
+	 * @param key to find
+	 * @param h hash of key
+	 * @return the node or null
+	 */
+	private Node<K,V> find(AtomicReferenceArray<Node<K,V>> tab, Object key, int h) {
+		Node<K,V> n = tab.get(h & (tab.length() - 1));
+		while (n != null && (n.hash != h || !n.key.equals(key))) {
+			n = n.next;
+		}
+		return n;
+	}
+
+	/**
+	 * lock the stripe of a bucket in the current table. Retries if
+	 * the table was replaced while waiting for the lock.
+	 * @param h hash of key
+	 * @return the table that is now safe to modify at h
+	 */
+	private AtomicReferenceArray<Node<K,V>> lockFor(int h) {
+		while (true) {
+			AtomicReferenceArray<Node<K,V>> tab = this.table;
+			ReentrantLock lock = this.locks[h & (STRIPES - 1)];
+			lock.lock();
+			if (tab == this.table) {
+				return tab;
+			}
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * unlock the stripe of a bucket.
+	 * @param h hash of key
+	 */
+	private void unlockFor(int h) {
+		this.locks[h & (STRIPES - 1)].unlock();
+	}
+
+	/**
+	 * The number of key-value entries in the table.
+	 * @return The number of key-value entries in the table.
+	 */
+	public int size() {
+		return (int) this.tableSize.sum();
+	}
+
+	/**
+	 * Returns the number of slots in the table.
+	 * @return the number of slots in the table.
+	 */
+	public int getNumSlots() {
+		return this.table.length();
+	}
+
+	/**
+	 * Returns the load on the table.
+	 * load = number of entries / number of slots
+	 * @return load on the table
+	 */
+	public double getLoad() {
+		double entries = (double) size();
+		double slots = (double) getNumSlots();
+		return entries/slots;
+	}
+
+	/**
+	 * add kvp to hash table.
+	 * @param key to add
+	 * @param value to add
+	 * @return true if added, false otherwise
+	 */
+	public boolean add(K key, V value) {
+		if (key==null || value==null) {
+			return false;
+		}
+		int h = hash(key);
+		AtomicReferenceArray<Node<K,V>> tab = lockFor(h);
+		try {
+			if (find(tab, key, h) != null) {
+				return false;
+			}
+			int index = h & (tab.length() - 1);
+			tab.set(index, new Node<>(key, h, value, tab.get(index)));
+			this.tableSize.increment();
+		}
+		finally {
+			unlockFor(h);
+		}
+		if (this.getLoad()>3) {
+			resize(tab, 2*tab.length());
+		}
+		return true;
+	}
+
+	/**
+	 * Rehashes the table to the given new size. Holds every stripe
+	 * while copying; readers keep using the old table until the new
+	 * one is published.
+	 * @param newSize to rehash
+	 */
+	public void rehash(int newSize) {
+		resize(null, newSize);
+	}
+
+	/**
+	 * copy every node into a table of the given size.
+	 * @param expected only resize if this is still the current table (null for always)
+	 * @param newSize to rehash
+	 */
+	private void resize(AtomicReferenceArray<Node<K,V>> expected, int newSize) {
+		for (ReentrantLock lock : this.locks) {
+			lock.lock();
+		}
+		try {
+			AtomicReferenceArray<Node<K,V>> old = this.table;
+			if (expected != null && expected != old) {
+				return; //another writer already grew it
+			}
+			AtomicReferenceArray<Node<K,V>> tab = new AtomicReferenceArray<>(slotsFor(newSize));
+			int mask = tab.length() - 1;
+			for (int i = 0; i < old.length(); i++) {
+				for (Node<K,V> n = old.get(i); n != null; n = n.next) {
+					int index = n.hash & mask;
+					tab.set(index, new Node<>(n.key, n.hash, n.value, tab.get(index)));
+				}
+			}
+			this.table = tab;
+		}
+		finally {
+			for (ReentrantLock lock : this.locks) {
+				lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * change the associated value to the provided value.
+	 * @param key of hashtable
+	 * @param value new value to change
+	 * @return true if change succeed, false otherwise
+	 */
+	public boolean replace(K key, V value) {
+		if (key==null || value==null) {
+			return false;
+		}
+		int h = hash(key);
+		AtomicReferenceArray<Node<K,V>> tab = lockFor(h);
+		try {
+			Node<K,V> n = find(tab, key, h);
+			if (n == null) {
+				return false;
+			}
+			n.value = value;
+			return true;
+		}
+		finally {
+			unlockFor(h);
+		}
+	}
+
+	/**
+	 * remove key and its connection.
+	 * @param key of hashtable
+	 * @return true if key is remove, false if key notfound/othewise
+	 */
+	public boolean remove(K key) {
+		if (key==null) {
+			return false;
+		}
+		int h = hash(key);
+		AtomicReferenceArray<Node<K,V>> tab = lockFor(h);
+		try {
+			int index = h & (tab.length() - 1);
+			Node<K,V> previous = null;
+			Node<K,V> current = tab.get(index);
+			while (current != null && (current.hash != h || !current.key.equals(key))) {
+				previous = current;
+				current = current.next;
+			}
+			if (current == null) {
+				return false;
+			}
+			if (previous == null) {
+				tab.set(index, current.next);
+			}
+			else {
+				previous.next = current.next;
+			}
+			this.tableSize.decrement();
+			return true;
+		}
+		finally {
+			unlockFor(h);
+		}
+	}
+
+	/**
+	 * contain key method. Does not lock.
+	 * @param key of hashtable
+	 * @return true if found, false otherwise
+	 */
+	public boolean contains(K key) {
+		return key != null && find(this.table, key, hash(key)) != null;
+	}
+
+	/**
+	 * get method. Does not lock.
+	 * @param key of hashtable
+	 * @return its value
+	 */
+	public V get(K key) {
+		if (key==null) {
+			return null;
+		}
+		Node<K,V> n = find(this.table, key, hash(key));
+		return n == null ? null : n.value;
+	}
+
+	/**
+	 * typical main method.
+	 * @param args for every main method
+	 * @throws InterruptedException if interrupted while joining
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		ConcurrentHashTable<Integer,Integer> ht = new ConcurrentHashTable<>(2);
+		Thread[] writers = new Thread[4];
+		for (int t = 0; t < writers.length; t++) {
+			final int base = t * 10000;
+			writers[t] = new Thread(() -> {
+				for (int i = base; i < base + 10000; i++) {
+					ht.add(i, i);
+				}
+				for (int i = base; i < base + 10000; i += 2) {
+					ht.remove(i);
+				}
+			});
+			writers[t].start();
+		}
+		for (Thread w : writers) {
+			w.join();
+		}
+		boolean ok = ht.size() == 20000;
+		for (int i = 0; i < 40000; i++) {
+			Integer v = ht.get(i);
+			ok &= (i % 2 == 0) ? v == null : v == i;
+		}
+		System.out.println(ok ? "Yay" : "Boo");
+	}
+}
@@ -36,6 +36,14 @@ public class Connection {
 	 */
 	private final int weight;
 	
+	/**
+	 *  The hash code, worked out once since the
+	 *  id never changes. Only the id goes into it,
+	 *  like equals(), so a restored connection hashes
+	 *  the same as any other with its id.
+	 */
+	private final int hash;
+	
 	/**
 	 *  The color of this connection in the visualization.
 	 */
@@ -48,6 +56,46 @@ public class Connection {
 	private Connection() {
 		id = ++LAST_ID;
 		weight = rand.nextInt(10)+1;
+		hash = id;
+	}
+	
+	/**
+	 *  Makes a connection with a given id and weight.
+	 *  @param id the connection's unique identifier
+	 *  @param weight the connection's weight
+	 */
+	private Connection(int id, int weight) {
+		this.id = id;
+		this.weight = weight;
+		this.hash = id;
+	}
+	
+	/**
+	 *  Makes a new connection (next id) with a given weight,
+	 *  for importing networks from other sources.
+	 *  @param weight the connection's weight
+	 *  @return the connection
+	 */
+	public static Connection withWeight(int weight) {
+		return new Connection(++LAST_ID, weight);
+	}
+	
+	/**
+	 *  Recreates a connection with a saved id and weight,
+	 *  for loading a network from a file. Ids handed out by
+	 *  the factory afterwards continue past it.
+	 *  @param id the connection's unique identifier
+	 *  @param weight the connection's weight
+	 *  @return the connection
+	 */
+	public static Connection restore(int id, int weight) {
+		if(id < 0) {
+			throw new IllegalArgumentException("Cannot create a connection with a negative id.");
+		}
+		if(id > LAST_ID) {
+			LAST_ID = id;
+		}
+		return new Connection(id, weight);
 	}
 	
 	/**
@@ -94,12 +142,12 @@ public class Connection {
 	}
 	
 	/**
-	 *  Sets the hash code of the connection (weight * id).
+	 *  Sets the hash code of the connection (its id).
 	 *  @return the hash code of the connection
 	 */
 	@Override
 	public int hashCode() {
-		return weight*id;
+		return hash;
 	}
 	
 	/**
@@ -0,0 +1,176 @@
+//A read only copy of a Network in compressed sparse row form. The out
+//edges of host v are the positions offsets[v] .. offsets[v+1]-1 of the
+//targets/weights/edges arrays, so walking a host's neighbors is a scan
+//of consecutive ints instead of a linked list walk. Hosts are indexed
+//by id. Build a new one whenever the network changes.
+
+/**
+ * immutable compressed sparse row adjacency.
+ */
+public class CsrNetwork {
+	/**
+	 * host for each id, null for ids not in the network.
+	 */
+	private final Host[] hosts;
+	/**
+	 * first edge position of each id, plus one final entry for the end.
+	 */
+	private final int[] offsets;
+	/**
+	 * destination host id of each edge.
+	 */
+	private final int[] targets;
+	/**
+	 * weight of each edge.
+	 */
+	private final int[] weights;
+	/**
+	 * the connection of each edge.
+	 */
+	private final Connection[] edges;
+	
+	/**
+	 * Copies the current adjacency of a network.
+	 * @param graph to copy
+	 */
+	public CsrNetwork(Network graph) {
+		int idBound = 0;
+		for (Host h : graph.getVertices()) {
+			idBound = Math.max(idBound, h.getId() + 1);
+		}
+		ArrayOfListsOfPairs<Host,Connection> adjacency = graph.getInternalTable();
+		this.hosts = new Host[idBound];
+		this.offsets = new int[idBound + 1];
+		for (Host h : graph.getVertices()) {
+			this.hosts[h.getId()] = h;
+			this.offsets[h.getId() + 1] = adjacency.getListLength(h.getId());
+		}
+		for (int v = 0; v < idBound; v++) {
+			this.offsets[v + 1] += this.offsets[v];
+		}
+		int edgeCount = this.offsets[idBound];
+		this.targets = new int[edgeCount];
+		this.weights = new int[edgeCount];
+		this.edges = new Connection[edgeCount];
+		for (Host h : graph.getVertices()) {
+			int e = this.offsets[h.getId()];
+			for (ArrayOfListsOfPairs.Node<Host,Connection> n = adjacency.getStorage()[h.getId()]; n != null; n = n.next) {
+				this.targets[e] = n.pair.getKey().getId();
+				this.weights[e] = n.pair.getValue().getWeight();
+				this.edges[e] = n.pair.getValue();
+				e++;
+			}
+		}
+	}
+	
+	/**
+	 * One more than the largest host id.
+	 * @return bound on host ids
+	 */
+	public int getIdBound() {
+		return this.hosts.length;
+	}
+	
+	/**
+	 * Number of edges.
+	 * @return edge count
+	 */
+	public int getEdgeCount() {
+		return this.targets.length;
+	}
+	
+	/**
+	 * The host with an id.
+	 * @param id of the host
+	 * @return the host, or null if it isn't in the network
+	 */
+	public Host getHost(int id) {
+		return this.hosts[id];
+	}
+	
+	/**
+	 * Position of the first out edge of a host.
+	 * @param id of the host
+	 * @return first edge position
+	 */
+	public int firstEdge(int id) {
+		return this.offsets[id];
+	}
+	
+	/**
+	 * One past the position of the last out edge of a host.
+	 * @param id of the host
+	 * @return end edge position
+	 */
+	public int endEdge(int id) {
+		return this.offsets[id + 1];
+	}
+	
+	/**
+	 * Number of out edges of a host.
+	 * @param id of the host
+	 * @return out degree
+	 */
+	public int outDegree(int id) {
+		return this.offsets[id + 1] - this.offsets[id];
+	}
+	
+	/**
+	 * Destination of an edge.
+	 * @param e edge position
+	 * @return id of the destination host
+	 */
+	public int target(int e) {
+		return this.targets[e];
+	}
+	
+	/**
+	 * Weight of an edge.
+	 * @param e edge position
+	 * @return weight
+	 */
+	public int weight(int e) {
+		return this.weights[e];
+	}
+	
+	/**
+	 * Connection object of an edge.
+	 * @param e edge position
+	 * @return the connection
+	 */
+	public Connection edge(int e) {
+		return this.edges[e];
+	}
+	
+	/**
+	 * typical main method.
+	 * @param args for every main method
+	 */
+	public static void main(String[] args) {
+		Network graph = new Network();
+		Host a = Host.getFactory().create();
+		Host b = Host.getFactory().create();
+		Host c = Host.getFactory().create();
+		graph.addVertex(a);
+		graph.addVertex(b);
+		graph.addVertex(c);
+		graph.addEdge(Connection.withWeight(3), a, b);
+		graph.addEdge(Connection.withWeight(5), a, c);
+		graph.addEdge(Connection.withWeight(7), b, c);
+		CsrNetwork csr = new CsrNetwork(graph);
+		boolean ok = csr.getIdBound() == c.getId() + 1 && csr.getEdgeCount() == 3;
+		ok &= csr.outDegree(a.getId()) == 2 && csr.outDegree(b.getId()) == 1 && csr.outDegree(c.getId()) == 0;
+		ok &= csr.firstEdge(0) == 0 && csr.endEdge(csr.getIdBound() - 1) == 3;
+		for (int v = 0; v < csr.getIdBound(); v++) {
+			ok &= csr.endEdge(v) == csr.firstEdge(v) + csr.outDegree(v);
+			for (int e = csr.firstEdge(v); e < csr.endEdge(v); e++) {
+				Connection edge = csr.edge(e);
+				ok &= graph.getSource(edge).equals(csr.getHost(v));
+				ok &= graph.getDest(edge).getId() == csr.target(e);
+				ok &= edge.getWeight() == csr.weight(e);
+			}
+		}
+		ok &= csr.getHost(a.getId()) == a && csr.getHost(c.getId()) == c;
+		System.out.println(ok ? "Yay" : "Boo");
+	}
+}
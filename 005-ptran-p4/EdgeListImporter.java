@@ -0,0 +1,416 @@
+//Reads a plain text edge list into a Network. Each line is
+//
+//  source id, destination id, weight
+//
+//separated by commas, semicolons, spaces or tabs. Blank lines and lines
+//starting with '#' are skipped, and so is a header line at the top (a
+//first line that starts with something other than a number; a first line
+//that starts with a number has to be a good edge). Ids in the file are
+//only labels: each distinct one gets a new Host with the next free id, so
+//hosts are numbered densely and a sparse or huge file id (say 2^30) can't
+//blow up the network's per host arrays. The same file id always means the
+//same host within one import.
+//
+//The file is read through a fixed size buffer and the numbers are parsed
+//straight from the bytes (no String per line or field). Edges are
+//collected into fixed size int arrays; each full batch makes room in the
+//network for its hosts once and then adds its edges. Apart from the
+//network itself and the file id to host map (one entry per host), memory
+//use stays constant no matter how big the file is.
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * streaming edge list importer.
+ */
+public class EdgeListImporter {
+	/**
+	 * bytes read from the file at a time.
+	 */
+	private static final int BUFFER_SIZE = 1 << 20;
+	/**
+	 * edges collected before they are added to the network.
+	 */
+	private static final int BATCH_SIZE = 1 << 16;
+	
+	/**
+	 * Gets told how the import is going after every batch.
+	 */
+	public interface Progress {
+		/**
+		 * called after each batch.
+		 * @param edges edges imported so far
+		 * @param bytes bytes read so far
+		 * @param totalBytes size of the file
+		 * @param nanos time spent so far
+		 */
+		void report(long edges, long bytes, long totalBytes, long nanos);
+	}
+	
+	/**
+	 * What an import did.
+	 */
+	public static class Summary {
+		/**
+		 * number of edges added.
+		 */
+		public final long edges;
+		/**
+		 * number of bytes read.
+		 */
+		public final long bytes;
+		/**
+		 * time taken.
+		 */
+		public final long nanos;
+		
+		/**
+		 * constructor.
+		 * @param edges added
+		 * @param bytes read
+		 * @param nanos taken
+		 */
+		Summary(long edges, long bytes, long nanos) {
+			this.edges = edges;
+			this.bytes = bytes;
+			this.nanos = nanos;
+		}
+		
+		/**
+		 * throughput.
+		 * @return edges imported per second
+		 */
+		public double edgesPerSecond() {
+			return this.nanos == 0 ? 0 : this.edges * 1e9 / this.nanos;
+		}
+		
+		/**
+		 * tostring method.
+		 * @return edges, megabytes and rate
+		 */
+		@Override
+		public String toString() {
+			return String.format("%d edges, %.1f MB in %.2f s (%.0f edges/s)",
+				this.edges, this.bytes / 1e6, this.nanos / 1e9, edgesPerSecond());
+		}
+	}
+	
+	/**
+	 * the network being filled.
+	 */
+	private final Network graph;
+	/**
+	 * told about each batch, may be null.
+	 */
+	private final Progress progress;
+	/**
+	 * sources of the current batch.
+	 */
+	private final int[] sources = new int[BATCH_SIZE];
+	/**
+	 * destinations of the current batch.
+	 */
+	private final int[] dests = new int[BATCH_SIZE];
+	/**
+	 * weights of the current batch.
+	 */
+	private final int[] weights = new int[BATCH_SIZE];
+	/**
+	 * host made for each file id so far.
+	 */
+	private final HostsByFileId hostsByFileId = new HostsByFileId(BATCH_SIZE);
+	/**
+	 * number of edges in the current batch.
+	 */
+	private int batched;
+	/**
+	 * edges added so far.
+	 */
+	private long edges;
+	
+	/**
+	 * constructor.
+	 * @param graph network to add to
+	 * @param progress told about each batch, may be null
+	 */
+	private EdgeListImporter(Network graph, Progress progress) {
+		this.graph = graph;
+		this.progress = progress;
+	}
+	
+	/**
+	 * Adds every edge in a file to a network.
+	 * @param graph network to add to
+	 * @param file edge list to read
+	 * @param progress told about each batch, may be null
+	 * @return what was imported
+	 * @throws IOException if the file can't be read or has a bad line
+	 */
+	public static Summary importInto(Network graph, Path file, Progress progress) throws IOException {
+		return new EdgeListImporter(graph, progress).run(file);
+	}
+	
+	/**
+	 * read the file.
+	 * @param file edge list to read
+	 * @return what was imported
+	 * @throws IOException if the file can't be read or has a bad line
+	 */
+	private Summary run(Path file) throws IOException {
+		long start = System.nanoTime();
+		long bytes = 0;
+		long line = 1;
+		int[] fields = new int[3];
+		int fieldCount = 0;
+		long value = 0;
+		boolean inNumber = false;
+		boolean skipLine = false;
+		
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long total = channel.size();
+			ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+			boolean eof = false;
+			while (!eof) {
+				buffer.clear();
+				int read = channel.read(buffer);
+				eof = read < 0;
+				buffer.flip();
+				if (!eof) {
+					bytes += read;
+				}
+				//at the end of the file act as if there was one more newline
+				int limit = eof ? 1 : buffer.limit();
+				for (int i = 0; i < limit; i++) {
+					byte b = eof ? (byte) '\n' : buffer.get(i);
+					if (b == '\n') {
+						if (!skipLine) {
+							if (inNumber) {
+								if (fieldCount == fields.length) {
+									throw badLine(file, line, "too many fields");
+								}
+								fields[fieldCount++] = (int) value;
+							}
+							if (fieldCount == fields.length) {
+								addEdge(fields[0], fields[1], fields[2]);
+								if (this.batched == BATCH_SIZE) {
+									flush(bytes, total, start);
+								}
+							}
+							else if (fieldCount != 0) {
+								throw badLine(file, line, "expected source, destination and weight");
+							}
+						}
+						line++;
+						fieldCount = 0;
+						value = 0;
+						inNumber = false;
+						skipLine = false;
+					}
+					else if (skipLine) {
+						continue;
+					}
+					else if (b >= '0' && b <= '9') {
+						value = value * 10 + (b - '0');
+						if (value > Integer.MAX_VALUE) {
+							throw badLine(file, line, "number too large");
+						}
+						inNumber = true;
+					}
+					else if (b == ',' || b == ';' || b == ' ' || b == '\t' || b == '\r') {
+						if (inNumber) {
+							if (fieldCount == fields.length) {
+								throw badLine(file, line, "too many fields");
+							}
+							fields[fieldCount++] = (int) value;
+							value = 0;
+							inNumber = false;
+						}
+					}
+					else if (b == '#' && fieldCount == 0 && !inNumber) {
+						skipLine = true;
+					}
+					else if (line == 1 && fieldCount == 0 && !inNumber) {
+						skipLine = true; //header
+					}
+					else {
+						throw badLine(file, line, "unexpected character '" + (char) b + "'");
+					}
+				}
+			}
+			flush(bytes, total, start);
+		}
+		return new Summary(this.edges, bytes, System.nanoTime() - start);
+	}
+	
+	/**
+	 * error for a malformed line.
+	 * @param file being read
+	 * @param line number of the line
+	 * @param why what's wrong
+	 * @return the exception to throw
+	 */
+	private static IOException badLine(Path file, long line, String why) {
+		return new IOException(file + ":" + line + ": " + why);
+	}
+	
+	/**
+	 * queue one edge.
+	 * @param source id of the source host
+	 * @param dest id of the destination host
+	 * @param weight of the edge
+	 */
+	private void addEdge(int source, int dest, int weight) {
+		this.sources[this.batched] = source;
+		this.dests[this.batched] = dest;
+		this.weights[this.batched] = weight;
+		this.batched++;
+	}
+	
+	/**
+	 * add the queued edges to the network.
+	 * @param bytes read so far
+	 * @param total size of the file
+	 * @param start when the import started
+	 */
+	private void flush(long bytes, long total, long start) {
+		Host[] ends = new Host[2 * this.batched];
+		int idBound = 0;
+		for (int i = 0; i < this.batched; i++) {
+			ends[2 * i] = host(this.sources[i]);
+			ends[2 * i + 1] = host(this.dests[i]);
+			idBound = Math.max(idBound, Math.max(ends[2 * i].getId(), ends[2 * i + 1].getId()) + 1);
+		}
+		this.graph.ensureCapacity(idBound);
+		for (int i = 0; i < this.batched; i++) {
+			this.graph.addEdge(Connection.withWeight(this.weights[i]), ends[2 * i], ends[2 * i + 1]);
+		}
+		this.edges += this.batched;
+		this.batched = 0;
+		if (this.progress != null) {
+			this.progress.report(this.edges, bytes, total, System.nanoTime() - start);
+		}
+	}
+	
+	/**
+	 * the host for a file id, made the first time the id is seen.
+	 * @param fileId id of the host in the file
+	 * @return the host
+	 */
+	private Host host(int fileId) {
+		Host h = this.hostsByFileId.get(fileId);
+		if (h == null) {
+			h = Host.getFactory().create();
+			this.hostsByFileId.put(fileId, h);
+		}
+		return h;
+	}
+	
+	/**
+	 * Host for each file id. Open addressing on plain int keys, so
+	 * looking up an id doesn't box it.
+	 */
+	private static final class HostsByFileId {
+		/**
+		 * file id in each slot.
+		 */
+		private int[] keys;
+		/**
+		 * host in each slot, null for an empty slot.
+		 */
+		private Host[] hosts;
+		/**
+		 * number of ids in the map.
+		 */
+		private int count;
+		
+		/**
+		 * constructor.
+		 * @param capacity number of slots, a power of two
+		 */
+		HostsByFileId(int capacity) {
+			this.keys = new int[capacity];
+			this.hosts = new Host[capacity];
+		}
+		
+		/**
+		 * first slot to look at for an id.
+		 * @param key file id
+		 * @return slot index
+		 */
+		private int slot(int key) {
+			int h = key * 0x9E3779B9;
+			return (h ^ (h >>> 16)) & (this.hosts.length - 1);
+		}
+		
+		/**
+		 * the host for an id.
+		 * @param key file id
+		 * @return the host, or null if the id hasn't been seen
+		 */
+		Host get(int key) {
+			for (int i = slot(key); this.hosts[i] != null; i = (i + 1) & (this.hosts.length - 1)) {
+				if (this.keys[i] == key) {
+					return this.hosts[i];
+				}
+			}
+			return null;
+		}
+		
+		/**
+		 * add the host of an id that isn't in the map yet.
+		 * @param key file id
+		 * @param host its host
+		 */
+		void put(int key, Host host) {
+			if (2 * (this.count + 1) > this.hosts.length) {
+				int[] oldKeys = this.keys;
+				Host[] oldHosts = this.hosts;
+				this.keys = new int[2 * oldKeys.length];
+				this.hosts = new Host[2 * oldHosts.length];
+				for (int i = 0; i < oldHosts.length; i++) {
+					if (oldHosts[i] != null) {
+						insert(oldKeys[i], oldHosts[i]);
+					}
+				}
+			}
+			insert(key, host);
+			this.count++;
+		}
+		
+		/**
+		 * put an entry into the first free slot of its probe sequence.
+		 * @param key file id
+		 * @param host its host
+		 */
+		private void insert(int key, Host host) {
+			int i = slot(key);
+			while (this.hosts[i] != null) {
+				i = (i + 1) & (this.hosts.length - 1);
+			}
+			this.keys[i] = key;
+			this.hosts[i] = host;
+		}
+	}
+	
+	/**
+	 * Imports a file and prints progress and throughput.
+	 * @param args the edge list file
+	 * @throws IOException if the file can't be read
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 1) {
+			System.out.println("Usage: java EdgeListImporter edges.csv");
+			return;
+		}
+		Network graph = new Network();
+		Summary summary = importInto(graph, Paths.get(args[0]), (edges, bytes, total, nanos) ->
+			System.out.printf("%5.1f%% %d edges (%.0f edges/s)%n", 100.0 * bytes / Math.max(total, 1), edges, edges * 1e9 / Math.max(nanos, 1)));
+		System.out.println(summary);
+		System.out.println(graph.getVertexCount() + " hosts");
+	}
+}
@@ -6,6 +6,7 @@
 //deal with keys and values separately.
 
 import java.util.Collection;
+import java.util.function.BiConsumer;
 
 /**
  * hashtable class.
@@ -18,6 +19,12 @@ public class HashTable<K,V> {
 	 */
 	private static final int MIN_SLOTS = 2;
 	
+	/**
+	 * Number of old buckets moved per operation while an incremental
+	 * resize is in progress.
+	 */
+	private static final int MIGRATE_STEP = 2;
+	
 	/**
 	 * You must use this as your internal storage.
 	 */
@@ -26,18 +33,54 @@ public class HashTable<K,V> {
 	 * keep track of table size.
 	 */
 	private int tableSize;
+	/**
+	 * whether growing moves buckets a few at a time instead of all at once.
+	 */
+	private final boolean incremental;
+	/**
+	 * whether slot counts are kept at powers of two and indexed with a mask.
+	 */
+	private final boolean powerOfTwo;
+	/**
+	 * storage being emptied into storage during an incremental resize, null otherwise.
+	 */
+	private ArrayOfListsOfPairs<K,V> oldStorage;
+	/**
+	 * next bucket of oldStorage to move.
+	 */
+	private int migrateIndex;
 
 	/**
 	 * If the number of slots requested is less than the minimum number of slots, use the minimum instead.
 	 * @param numSlots to initialize
 	 */
 	public HashTable(int numSlots) {
-		if (numSlots < MIN_SLOTS){
-			this.storage = new ArrayOfListsOfPairs<>(MIN_SLOTS);
-		}
-		else {
-			this.storage = new ArrayOfListsOfPairs<>(numSlots);
-		}
+		this(numSlots, false);
+	}
+	
+	/**
+	 * In incremental mode a resize keeps the old and new storage side by side
+	 * and every add/get/remove moves a couple of old buckets over, so no single
+	 * operation pays for the whole rebuild.
+	 * @param numSlots to initialize
+	 * @param incremental whether to resize incrementally
+	 */
+	public HashTable(int numSlots, boolean incremental) {
+		this(numSlots, incremental, false);
+	}
+	
+	/**
+	 * In power of two mode the slot count is rounded up to a power of two,
+	 * hashes are bit-mixed and the bucket is picked with a mask instead of
+	 * a division. Growing goes to the next power of two.
+	 * @param numSlots to initialize
+	 * @param incremental whether to resize incrementally
+	 * @param powerOfTwo whether to use power of two slot counts
+	 */
+	public HashTable(int numSlots, boolean incremental, boolean powerOfTwo) {
+		this.incremental = incremental;
+		this.powerOfTwo = powerOfTwo;
+		this.storage = new ArrayOfListsOfPairs<>(slotsFor(numSlots));
 		this.tableSize = 0;
 	}
 	
@@ -68,6 +111,87 @@ public class HashTable<K,V> {
 		return entries/slots;
 	}
 	
+	/**
+	 * Whether an incremental resize is still moving buckets.
+	 * @return true if old storage is still in use
+	 */
+	public boolean isResizing() {
+		return this.oldStorage != null;
+	}
+	
+	/**
+	 * number of slots to grow to: three times as many, or in power
+	 * of two mode the next power of two.
+	 * @return requested new size
+	 */
+	private int grownSize() {
+		return this.powerOfTwo ? 2*getNumSlots() : 3*getNumSlots();
+	}
+	
+	/**
+	 * number of slots to actually use for a requested size.
+	 * @param numSlots requested
+	 * @return the minimum, the next power of two (power of two mode), or numSlots
+	 */
+	private int slotsFor(int numSlots) {
+		if (numSlots < MIN_SLOTS) {
+			return MIN_SLOTS;
+		}
+		if (this.powerOfTwo) {
+			return Integer.highestOneBit(numSlots - 1) << 1;
+		}
+		return numSlots;
+	}
+	
+	/**
+	 * murmur3 finalizer, so that hashes differing only in the high
+	 * bits (like similar strings) still land in different buckets.
+	 * @param h hash to mix
+	 * @return mixed hash
+	 */
+	private static int mix(int h) {
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
+	}
+	
+	/**
+	 * bucket of a key in the given storage. The sign bit is dropped
+	 * so negative hash codes still give a valid index.
+	 * @param key to place
+	 * @param lists storage to place it in
+	 * @return index of the list
+	 */
+	private int indexFor(K key, ArrayOfListsOfPairs<K,V> lists) {
+		if (this.powerOfTwo) {
+			return mix(key.hashCode()) & (lists.getNumLists() - 1);
+		}
+		return (key.hashCode() & 0x7fffffff) % lists.getNumLists();
+	}
+	
+	/**
+	 * move up to MIGRATE_STEP buckets of the old storage into the new one.
+	 */
+	private void migrateStep() {
+		if (this.oldStorage == null) {
+			return;
+		}
+		ArrayOfListsOfPairs.Node<K,V>[] old = this.oldStorage.getStorage();
+		int stop = Math.min(old.length, this.migrateIndex + MIGRATE_STEP);
+		for (; this.migrateIndex < stop; this.migrateIndex++) {
+			for (ArrayOfListsOfPairs.Node<K,V> n = old[this.migrateIndex]; n != null; n = n.next) {
+				this.storage.add(indexFor(n.pair.getKey(), this.storage), n.pair.getKey(), n.pair.getValue());
+			}
+			this.oldStorage.clearList(this.migrateIndex);
+		}
+		if (this.migrateIndex >= old.length) {
+			this.oldStorage = null;
+		}
+	}
+	
 	/**
 	 * add kvp to hash table.
 	 * @param key to add
@@ -78,33 +202,82 @@ public class HashTable<K,V> {
 		if (key==null || value==null) {
 			return false;
 		}
+		migrateStep();
 		if (contains(key)) {
 			return false;
 		}
-		int index = key.hashCode() % this.storage.getNumLists();
+		int index = indexFor(key, this.storage);
 		this.storage.add(index, key, value);
 		this.tableSize++;
-		if (this.getLoad()>3) {
-			rehash(3*getNumSlots());
+		if (this.getLoad()>3 && this.oldStorage == null) {
+			if (this.incremental) {
+				this.oldStorage = this.storage;
+				this.migrateIndex = 0;
+				this.storage = new ArrayOfListsOfPairs<>(slotsFor(grownSize()));
+			}
+			else {
+				rehash(grownSize());
+			}
 		}
 		return true;
 	}
 	
 	/**
-	 * Rehashes the table to the given new size.
+	 * add many pairs at once. The storage is grown once up front to fit
+	 * all of them instead of being rehashed several times along the way.
+	 * @param pairs to add
+	 * @param uniqueKeys the caller promises no key is repeated and none is
+	 * already in the table, so the duplicate check is skipped
+	 * @return number of pairs added
+	 */
+	public int addAll(Collection<KeyValuePair<K,V>> pairs, boolean uniqueKeys) {
+		int needed = (int) Math.ceil((this.tableSize + pairs.size()) / 3.0);
+		if (needed > getNumSlots() || this.oldStorage != null) {
+			rehash(Math.max(needed, getNumSlots()));
+		}
+		int added = 0;
+		for (KeyValuePair<K,V> pair : pairs) {
+			K key = pair.getKey();
+			V value = pair.getValue();
+			if (key==null || value==null) {
+				continue;
+			}
+			if (!uniqueKeys && contains(key)) {
+				continue;
+			}
+			this.storage.add(indexFor(key, this.storage), key, value);
+			added++;
+		}
+		this.tableSize += added;
+		return added;
+	}
+	
+	/**
+	 * add many pairs at once, skipping keys that are already present.
+	 * @param pairs to add
+	 * @return number of pairs added
+	 */
+	public int addAll(Collection<KeyValuePair<K,V>> pairs) {
+		return addAll(pairs, false);
+	}
+	
+	/**
+	 * Rehashes the table to the given new size. Any incremental
+	 * resize in progress is finished as part of this.
 	 * @param newSize to rehash
 	 */
 	public void rehash(int newSize) {
-		if (newSize<MIN_SLOTS) {
-			newSize = MIN_SLOTS;
-		}
+		newSize = slotsFor(newSize);
+		ArrayOfListsOfPairs<K,V> current = this.storage;
+		ArrayOfListsOfPairs<K,V> old = this.oldStorage;
 		ArrayOfListsOfPairs<K,V> newStorage = new ArrayOfListsOfPairs<>(newSize);
-		this.storage = newStorage;
-		Collection<KeyValuePair<K,V>> newRehashMap = this.storage.getAllPairs();
-		for (KeyValuePair<K,V> pair : newRehashMap) {
-			int index = pair.getKey().hashCode() % this.storage.getNumLists();
-			this.storage.add(index, pair.getKey(), pair.getValue());
+		BiConsumer<K,V> move = (k, v) -> newStorage.add(indexFor(k, newStorage), k, v);
+		current.forEach(move);
+		if (old != null) {
+			old.forEach(move);
 		}
+		this.storage = newStorage;
+		this.oldStorage = null;
 	}
 	
 	/**
@@ -114,11 +287,15 @@ public class HashTable<K,V> {
 	 * @return true if change succeed, false otherwise
 	 */
 	public boolean replace(K key, V value) {
-		if (!contains(key)) {
+		if (key==null || value==null) {
 			return false;
 		}
-		int index = key.hashCode() % this.storage.getNumLists();
-		return this.storage.replace(index, key, value);
+		migrateStep();
+		if (this.storage.replace(indexFor(key, this.storage), key, value)) {
+			return true;
+		}
+		return this.oldStorage != null
+			&& this.oldStorage.replace(indexFor(key, this.oldStorage), key, value);
 	}
 	
 	/**
@@ -127,12 +304,15 @@ public class HashTable<K,V> {
 	 * @return true if key is remove, false if key notfound/othewise
 	 */
 	public boolean remove(K key) {
-		int index = key.hashCode() % this.storage.getNumLists();
-		if (!contains(key)) {
-			return false;
+		migrateStep();
+		boolean removed = this.storage.remove(indexFor(key, this.storage), key);
+		if (!removed && this.oldStorage != null) {
+			removed = this.oldStorage.remove(indexFor(key, this.oldStorage), key);
+		}
+		if (removed) {
+			this.tableSize--;
 		}
-		this.tableSize--;
-		return this.storage.remove(index, key);
+		return removed;
 	}
 	
 	/**
@@ -141,8 +321,11 @@ public class HashTable<K,V> {
 	 * @return true if found, false otherwise
 	 */
 	public boolean contains(K key) {
-		int index = key.hashCode() % this.storage.getNumLists();
-		return this.storage.containKey(index, key);
+		if (this.storage.containKey(indexFor(key, this.storage), key)) {
+			return true;
+		}
+		return this.oldStorage != null
+			&& this.oldStorage.containKey(indexFor(key, this.oldStorage), key);
 	}
 	
 	/**
@@ -151,11 +334,12 @@ public class HashTable<K,V> {
 	 * @return its value
 	 */
 	public V get(K key) {
-		int index = key.hashCode() % this.storage.getNumLists();
-		if (!contains(key)) {
-			return null;
+		migrateStep();
+		V value = this.storage.getKey(indexFor(key, this.storage), key);
+		if (value == null && this.oldStorage != null) {
+			value = this.oldStorage.getKey(indexFor(key, this.oldStorage), key);
 		}
-		return this.storage.getKey(index, key);
+		return value;
 	}
 	
 	//--------------------------------------------------------
@@ -199,6 +383,41 @@ public class HashTable<K,V> {
 		ht.add(3, "cherry");
 		ht.replace(3, "apple");
 		System.out.println(ht.get(3));
+		
+		//incremental resize keeps every entry reachable mid-migration
+		HashTable<Integer,Integer> inc = new HashTable<>(2, true);
+		boolean ok = true;
+		for (int i = 0; i < 1000; i++) {
+			inc.add(i, i);
+			ok &= inc.get(i / 2) == i / 2;
+		}
+		for (int i = 0; i < 1000; i += 3) {
+			ok &= inc.remove(i);
+		}
+		ok &= inc.size() == 666 && !inc.contains(999) && inc.get(998) == 998;
+		System.out.println(ok ? "Yay" : "Boo");
+		
+		//power of two mode with negative hash codes
+		HashTable<Integer,Integer> pow = new HashTable<>(5, false, true);
+		ok = pow.getNumSlots() == 8;
+		for (int i = -500; i < 500; i++) {
+			pow.add(i, i);
+		}
+		for (int i = -500; i < 500; i++) {
+			ok &= pow.get(i) == i;
+		}
+		ok &= Integer.bitCount(pow.getNumSlots()) == 1;
+		System.out.println(ok ? "Yay" : "Boo");
+		
+		//bulk add sizes the table once
+		java.util.ArrayList<KeyValuePair<Integer,Integer>> bulk = new java.util.ArrayList<>();
+		for (int i = 0; i < 300; i++) {
+			bulk.add(new KeyValuePair<>(i, i));
+		}
+		HashTable<Integer,Integer> loaded = new HashTable<>(2);
+		ok = loaded.addAll(bulk, true) == 300 && loaded.getNumSlots() == 100;
+		ok &= loaded.addAll(bulk) == 0 && loaded.size() == 300 && loaded.get(299) == 299;
+		System.out.println(ok ? "Yay" : "Boo");
 	}
 	
 	//--------------------------------------------------------
@@ -24,6 +24,12 @@ public class Host {
 	 */
 	private final int id;
 	
+	/**
+	 *  The hash code, worked out once since the
+	 *  id never changes.
+	 */
+	private final int hash;
+	
 	/**
 	 *  The color of this node in the visualization.
 	 */
@@ -32,13 +38,14 @@ public class Host {
 	/**
 	 *  The routing table that this node is aware of.
 	 */
-	private RoutingTable routes = new RoutingTable();
+	private IdRoutingTable routes = new IdRoutingTable();
 	
 	/**
 	 *  Sets the id of the host.
 	 */
 	private Host() {
 		id = ++LAST_ID;
+		hash = toString().hashCode();
 	}
 	
 	/**
@@ -56,6 +63,24 @@ public class Host {
 			throw new IllegalArgumentException("Cannot create a node with an arbitrary id.");
 		}
 		this.id = id;
+		this.hash = toString().hashCode();
+	}
+	
+	/**
+	 *  Recreates a host with a saved id, for loading a
+	 *  network from a file. Ids handed out by the factory
+	 *  afterwards continue past it.
+	 *  @param id the unique identifier of the node
+	 *  @return the host
+	 */
+	public static Host restore(int id) {
+		if(id < 0) {
+			throw new IllegalArgumentException("Cannot create a node with a negative id.");
+		}
+		if(id > LAST_ID) {
+			LAST_ID = id;
+		}
+		return new Host(id);
 	}
 	
 	/**
@@ -85,12 +110,14 @@ public class Host {
 	/**
 	 *  Sets the hashcode of the host
 	 *  to be a hash of the string value
-	 *  which contains the id.
+	 *  which contains the id. It is computed
+	 *  once in the constructor, so every copy
+	 *  of a host with the same id agrees.
 	 *  @return the hash code of the host
 	 */
 	@Override
 	public int hashCode() {
-		return toString().hashCode();
+		return hash;
 	}
 	
 	/**
@@ -99,14 +126,30 @@ public class Host {
 	 *  @return the string representation of the host
 	 */
 	public String toString() {
-		return "192.168.1."+id;
+		return addressOf(id);
+	}
+	
+	/**
+	 *  The address of a host id. The first 256 ids
+	 *  keep their 192.168.1.x addresses; after that
+	 *  ids count up through 10.0.1.0/8, which fits
+	 *  about 16.7 million hosts. Larger ids still get
+	 *  a unique (if not valid IPv4) address.
+	 *  @param id the host id
+	 *  @return the address for that id
+	 */
+	public static String addressOf(int id) {
+		if(id < 256) {
+			return "192.168.1."+id;
+		}
+		return "10."+(id >>> 16)+"."+((id >>> 8) & 0xff)+"."+(id & 0xff);
 	}
 	
 	/**
 	 *  Returns the routing table for host.
 	 *  @return the full routing table
 	 */
-	public RoutingTable getRoutingTable() { 
+	public IdRoutingTable getRoutingTable() { 
 		return routes;
 	}
 	
@@ -0,0 +1,117 @@
+//Compares HashTable<Host,?> lookups with the old Host hash code (which
+//built the address string on every call) against the cached hash code.
+//Reports time and bytes allocated per lookup on the current thread.
+//Run with: java HostHashBenchmark [hosts] [rounds]
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * allocation benchmark for host lookups.
+ */
+public class HostHashBenchmark {
+	/**
+	 * A host whose hash code is recomputed from its
+	 * address every time, like Host used to do.
+	 */
+	private static class UncachedHost {
+		/**
+		 * wrapped host.
+		 */
+		private final Host host;
+		
+		/**
+		 * constructor.
+		 * @param host to wrap
+		 */
+		UncachedHost(Host host) {
+			this.host = host;
+		}
+		
+		/**
+		 * the old hash code.
+		 * @return hash of the address string
+		 */
+		@Override
+		public int hashCode() {
+			return host.toString().hashCode();
+		}
+		
+		/**
+		 * same as Host.equals.
+		 * @param o other
+		 * @return true if same host
+		 */
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof UncachedHost && host.equals(((UncachedHost)o).host);
+		}
+	}
+	
+	/**
+	 * bytes allocated so far by this thread.
+	 * @return allocated bytes
+	 */
+	private static long allocated() {
+		return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+			.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+	
+	/**
+	 * look up every key rounds times.
+	 * @param <K> key type
+	 * @param table to look in
+	 * @param keys to look up
+	 * @param rounds number of passes
+	 * @return sum of values, so the lookups can't be skipped
+	 */
+	private static <K> long lookups(HashTable<K,Integer> table, K[] keys, int rounds) {
+		long sum = 0;
+		for (int r = 0; r < rounds; r++) {
+			for (K k : keys) {
+				sum += table.get(k);
+			}
+		}
+		return sum;
+	}
+	
+	/**
+	 * time and allocation of one run.
+	 * @param <K> key type
+	 * @param name to print
+	 * @param table to look in
+	 * @param keys to look up
+	 * @param rounds number of passes
+	 */
+	private static <K> void measure(String name, HashTable<K,Integer> table, K[] keys, int rounds) {
+		lookups(table, keys, rounds); //warm up
+		long bytes = allocated();
+		long start = System.nanoTime();
+		long sum = lookups(table, keys, rounds);
+		long nanos = System.nanoTime() - start;
+		bytes = allocated() - bytes;
+		double ops = (double) keys.length * rounds;
+		System.out.printf("%-9s %8.1f ns/op %8.1f B/op (checksum %d)%n", name, nanos / ops, bytes / ops, sum);
+	}
+	
+	/**
+	 * typical main method.
+	 * @param args number of hosts and rounds
+	 */
+	public static void main(String[] args) {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 255;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+		
+		Host[] hosts = new Host[n];
+		UncachedHost[] uncached = new UncachedHost[n];
+		HashTable<Host,Integer> cachedTable = new HashTable<>(n);
+		HashTable<UncachedHost,Integer> uncachedTable = new HashTable<>(n);
+		for (int i = 0; i < n; i++) {
+			hosts[i] = Host.getFactory().create();
+			uncached[i] = new UncachedHost(hosts[i]);
+			cachedTable.add(hosts[i], i);
+			uncachedTable.add(uncached[i], i);
+		}
+		measure("uncached", uncachedTable, uncached, rounds);
+		measure("cached", cachedTable, hosts, rounds);
+	}
+}
@@ -0,0 +1,475 @@
+//A routing table indexed directly by host id. Instead of hashing
+//Host objects (which builds the host's address string every time)
+//the destination id is used as an index holding the next hop. Next
+//hops are always direct neighbors, so the index only stores a small
+//slot number into an array of the distinct next hop hosts.
+//
+//The index is split into blocks of CHUNK ids. A block with no routes
+//is just null. A lookup is three array reads.
+//
+//The arrays are never changed once a table is visible. A new table is
+//put together in a Builder and swapped in with one volatile write, so
+//lookups need no lock and never see a half built table, even while
+//routes are being recomputed on another thread. A Builder made by
+//edit() shares every block with the published table and copies a
+//block only the first time it writes to it, so changing a few routes
+//costs the blocks they fall in, not a copy of the whole index.
+//
+//It is not a HashTable: it offers the same lookups and updates as
+//RoutingTable and the same HTML, but there is no chained storage
+//behind it.
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * routing table keyed by Host.getId().
+ */
+public class IdRoutingTable {
+	/**
+	 * marks a destination without a route.
+	 */
+	private static final int NO_ROUTE = -1;
+	/**
+	 * log2 of CHUNK.
+	 */
+	private static final int CHUNK_BITS = 6;
+	/**
+	 * ids per block of the index.
+	 */
+	private static final int CHUNK = 1 << CHUNK_BITS;
+	/**
+	 * picks the position of an id inside its block.
+	 */
+	private static final int CHUNK_MASK = CHUNK - 1;
+	
+	/**
+	 * An immutable set of routes.
+	 */
+	private static final class Snapshot {
+		/**
+		 * blocks of the index: slot in hops for each destination
+		 * id, or NO_ROUTE. A null block has no routes.
+		 */
+		final int[][] chunks;
+		/**
+		 * the distinct next hop hosts.
+		 */
+		final Host[] hops;
+		/**
+		 * number of destinations with a route.
+		 */
+		final int routeCount;
+		
+		/**
+		 * constructor.
+		 * @param chunks blocks of slots per destination id
+		 * @param hops distinct next hops
+		 * @param routeCount number of routes
+		 */
+		Snapshot(int[][] chunks, Host[] hops, int routeCount) {
+			this.chunks = chunks;
+			this.hops = hops;
+			this.routeCount = routeCount;
+		}
+	}
+	
+	/**
+	 * the slot of a destination in a blocked index.
+	 * @param chunks the blocks
+	 * @param id destination id
+	 * @return its slot in hops, or NO_ROUTE
+	 */
+	private static int slotIn(int[][] chunks, int id) {
+		int c = id >>> CHUNK_BITS;
+		if (id < 0 || c >= chunks.length || chunks[c] == null) {
+			return NO_ROUTE;
+		}
+		return chunks[c][id & CHUNK_MASK];
+	}
+	
+	/**
+	 * Collects routes for a new table. Not thread safe; hand it to
+	 * publish() once it's complete.
+	 */
+	public static class Builder {
+		/**
+		 * blocks of the index, some shared with published snapshots.
+		 */
+		private int[][] chunks;
+		/**
+		 * which blocks belong to this builder alone and can be written.
+		 */
+		private boolean[] owned;
+		/**
+		 * the distinct next hop hosts.
+		 */
+		private Host[] hops;
+		/**
+		 * number of used entries in hops.
+		 */
+		private int hopCount;
+		/**
+		 * number of destinations with a route.
+		 */
+		private int routeCount;
+		
+		/**
+		 * empty builder.
+		 */
+		public Builder() {
+			this(0);
+		}
+		
+		/**
+		 * empty builder with room for destination ids below idCapacity,
+		 * so filling it never has to grow the id index.
+		 * @param idCapacity expected number of host ids
+		 */
+		public Builder(int idCapacity) {
+			int blocks = (Math.max(idCapacity, 0) + CHUNK - 1) >>> CHUNK_BITS;
+			this.chunks = new int[blocks][];
+			this.owned = new boolean[blocks];
+			this.hops = new Host[2];
+		}
+		
+		/**
+		 * builder starting from the routes of a snapshot. Only the
+		 * list of blocks is copied; the blocks are copied on write.
+		 * @param s routes to start from
+		 */
+		private Builder(Snapshot s) {
+			this.chunks = s.chunks.clone();
+			this.owned = new boolean[this.chunks.length];
+			this.hops = Arrays.copyOf(s.hops, Math.max(2, s.hops.length));
+			this.hopCount = s.hops.length;
+			this.routeCount = s.routeCount;
+		}
+		
+		/**
+		 * the block holding an id, ready to be written.
+		 * @param id destination id
+		 * @return a block owned by this builder
+		 */
+		private int[] writable(int id) {
+			int c = id >>> CHUNK_BITS;
+			if (c >= this.chunks.length) {
+				int size = Math.max(c + 1, 2 * this.chunks.length);
+				this.chunks = Arrays.copyOf(this.chunks, size);
+				this.owned = Arrays.copyOf(this.owned, size);
+			}
+			if (!this.owned[c]) {
+				int[] old = this.chunks[c];
+				int[] block;
+				if (old == null) {
+					block = new int[CHUNK];
+					Arrays.fill(block, NO_ROUTE);
+				}
+				else {
+					block = old.clone();
+				}
+				this.chunks[c] = block;
+				this.owned[c] = true;
+			}
+			return this.chunks[c];
+		}
+		
+		/**
+		 * slot of a next hop host, adding it if it's new.
+		 * @param nextHop host
+		 * @return its index in hops
+		 */
+		private int slotOf(Host nextHop) {
+			for (int i = 0; i < this.hopCount; i++) {
+				if (this.hops[i].getId() == nextHop.getId()) {
+					return i;
+				}
+			}
+			if (this.hopCount == this.hops.length) {
+				this.hops = Arrays.copyOf(this.hops, 2 * this.hopCount);
+			}
+			this.hops[this.hopCount] = nextHop;
+			return this.hopCount++;
+		}
+		
+		/**
+		 * add a route.
+		 * @param dest destination host
+		 * @param nextHop next hop towards dest
+		 * @return true if added, false if null or dest already has a route
+		 */
+		public boolean add(Host dest, Host nextHop) {
+			if (dest == null || nextHop == null) {
+				return false;
+			}
+			int id = dest.getId();
+			if (slotIn(this.chunks, id) != NO_ROUTE) {
+				return false;
+			}
+			writable(id)[id & CHUNK_MASK] = slotOf(nextHop);
+			this.routeCount++;
+			return true;
+		}
+		
+		/**
+		 * add a route, or change the next hop of an existing one.
+		 * @param dest destination host
+		 * @param nextHop next hop towards dest
+		 */
+		public void put(Host dest, Host nextHop) {
+			int id = dest.getId();
+			if (slotIn(this.chunks, id) == NO_ROUTE) {
+				this.routeCount++;
+			}
+			writable(id)[id & CHUNK_MASK] = slotOf(nextHop);
+		}
+		
+		/**
+		 * remove a route.
+		 * @param dest destination host
+		 * @return true if removed, false if there was no route
+		 */
+		public boolean remove(Host dest) {
+			return remove(dest.getId());
+		}
+		
+		/**
+		 * remove a route by destination id.
+		 * @param destId id of the destination
+		 * @return true if removed, false if there was no route
+		 */
+		public boolean remove(int destId) {
+			if (slotIn(this.chunks, destId) == NO_ROUTE) {
+				return false;
+			}
+			writable(destId)[destId & CHUNK_MASK] = NO_ROUTE;
+			this.routeCount--;
+			return true;
+		}
+		
+		/**
+		 * the routes collected so far, frozen. The blocks are handed
+		 * to the snapshot, so the builder copies any it writes again.
+		 * @return a snapshot no later change to this builder can reach
+		 */
+		private Snapshot build() {
+			Snapshot s = new Snapshot(this.chunks.clone(), Arrays.copyOf(this.hops, this.hopCount), this.routeCount);
+			Arrays.fill(this.owned, false);
+			return s;
+		}
+	}
+	
+	/**
+	 * the published routes.
+	 */
+	private volatile Snapshot current;
+	
+	/**
+	 * the table every host starts with.
+	 */
+	private static final Snapshot EMPTY = new Snapshot(new int[0][], new Host[0], 0);
+	
+	/**
+	 * constructor, no routes.
+	 */
+	public IdRoutingTable() {
+		this.current = EMPTY;
+	}
+	
+	/**
+	 * Replaces every route with the ones in the builder, in one step.
+	 * @param routes the new routes
+	 */
+	public void publish(Builder routes) {
+		this.current = routes.build();
+	}
+	
+	/**
+	 * A builder holding the current routes, for changing a few of
+	 * them and publishing the result. Costs a copy of the list of
+	 * blocks, plus one block for each block a change falls in. Only
+	 * one thread should edit a table at a time.
+	 * @return builder with the published routes
+	 */
+	public Builder edit() {
+		return new Builder(this.current);
+	}
+	
+	/**
+	 * Returns the id of the next hop towards a destination.
+	 * @param destId id of the destination
+	 * @return id of the next hop, or -1 if there is no route
+	 */
+	public int getNextHopId(int destId) {
+		Snapshot s = this.current;
+		int slot = slotIn(s.chunks, destId);
+		return slot == NO_ROUTE ? NO_ROUTE : s.hops[slot].getId();
+	}
+	
+	/**
+	 * number of destinations with a route.
+	 * @return number of routes
+	 */
+	public int size() {
+		return this.current.routeCount;
+	}
+	
+	/**
+	 * add a route. Copies the table, use a Builder for many routes.
+	 * @param dest destination host
+	 * @param nextHop next hop towards dest
+	 * @return true if added, false if null or dest already has a route
+	 */
+	public synchronized boolean add(Host dest, Host nextHop) {
+		Builder b = new Builder(this.current);
+		if (!b.add(dest, nextHop)) {
+			return false;
+		}
+		publish(b);
+		return true;
+	}
+	
+	/**
+	 * change the next hop of an existing route.
+	 * @param dest destination host
+	 * @param nextHop new next hop
+	 * @return true if changed, false if there was no route
+	 */
+	public synchronized boolean replace(Host dest, Host nextHop) {
+		if (nextHop == null || !contains(dest)) {
+			return false;
+		}
+		Builder b = new Builder(this.current);
+		b.put(dest, nextHop);
+		publish(b);
+		return true;
+	}
+	
+	/**
+	 * remove a route.
+	 * @param dest destination host
+	 * @return true if removed, false if there was no route
+	 */
+	public synchronized boolean remove(Host dest) {
+		if (!contains(dest)) {
+			return false;
+		}
+		Builder b = new Builder(this.current);
+		b.remove(dest);
+		publish(b);
+		return true;
+	}
+	
+	/**
+	 * add many routes in one copy of the table.
+	 * @param pairs (destination, next hop) pairs to add
+	 * @param uniqueKeys ignored, a duplicate check is just an array read
+	 * @return number of routes added
+	 */
+	public synchronized int addAll(Collection<KeyValuePair<Host,Host>> pairs, boolean uniqueKeys) {
+		Builder b = new Builder(this.current);
+		int added = 0;
+		for (KeyValuePair<Host,Host> pair : pairs) {
+			if (b.add(pair.getKey(), pair.getValue())) {
+				added++;
+			}
+		}
+		if (added > 0) {
+			publish(b);
+		}
+		return added;
+	}
+	
+	/**
+	 * add many routes, skipping destinations that already have one.
+	 * @param pairs (destination, next hop) pairs to add
+	 * @return number of routes added
+	 */
+	public int addAll(Collection<KeyValuePair<Host,Host>> pairs) {
+		return addAll(pairs, false);
+	}
+	
+	/**
+	 * whether there is a route.
+	 * @param dest destination host
+	 * @return true if dest has a route
+	 */
+	public boolean contains(Host dest) {
+		return dest != null && getNextHopId(dest.getId()) != NO_ROUTE;
+	}
+	
+	/**
+	 * the next hop towards a destination. Never blocks.
+	 * @param dest destination host
+	 * @return the next hop, or null if there is no route
+	 */
+	public Host get(Host dest) {
+		if (dest == null) {
+			return null;
+		}
+		Snapshot s = this.current;
+		int slot = slotIn(s.chunks, dest.getId());
+		return slot == NO_ROUTE ? null : s.hops[slot];
+	}
+	
+	/**
+	 *  Produces the same HTML as RoutingTable, ordered by destination id.
+	 *  @return the HTML for a routing table
+	 */
+	@Override
+	public String toString() {
+		Snapshot s = this.current;
+		if(s.routeCount < 1) return "<br />No Routes";
+		
+		StringBuilder sb = new StringBuilder();
+		sb.append("<br />Routing Table: <table border=0>");
+		sb.append("<tr><th>To</th><th>Next Hop</th></tr>");
+		for (int c = 0; c < s.chunks.length; c++) {
+			int[] block = s.chunks[c];
+			for (int i = 0; block != null && i < CHUNK; i++) {
+				if (block[i] != NO_ROUTE) {
+					RoutingTable.appendRow(sb, Host.addressOf((c << CHUNK_BITS) | i), s.hops[block[i]]);
+				}
+			}
+		}
+		sb.append("</table>");
+		return sb.toString();
+	}
+	
+	/**
+	 * typical main method.
+	 * @param args for every main method
+	 */
+	public static void main(String[] args) {
+		Host a = Host.getFactory().create();
+		Host b = Host.getFactory().create();
+		Host c = Host.getFactory().create();
+		IdRoutingTable table = a.getRoutingTable();
+		ArrayList<KeyValuePair<Host,Host>> routes = new ArrayList<>();
+		routes.add(new KeyValuePair<>(b, b));
+		routes.add(new KeyValuePair<>(c, b));
+		boolean ok = table.addAll(routes) == 2;
+		ok &= table.size() == 2 && b.equals(table.get(b)) && b.equals(table.get(c));
+		ok &= table.addAll(routes, true) == 0 && table.size() == 2;
+		ok &= table.toString().contains(c.toString());
+		
+		//an edit copies only the block it writes to
+		Host far = null;
+		for (int i = 0; i < 3 * CHUNK; i++) {
+			far = Host.getFactory().create();
+		}
+		Builder edits = table.edit();
+		edits.put(far, c);
+		edits.remove(b);
+		Snapshot before = table.current;
+		table.publish(edits);
+		Snapshot after = table.current;
+		ok &= before.chunks.length == 1 && after.chunks.length > far.getId() >>> CHUNK_BITS;
+		ok &= table.size() == 2 && table.get(b) == null && c.equals(table.get(far)) && b.equals(table.get(c));
+		ok &= before.chunks[0][b.getId()] != NO_ROUTE && after.chunks[0] != before.chunks[0];
+		edits.remove(far);
+		ok &= c.equals(table.get(far));
+		System.out.println(ok ? "Yay" : "Boo");
+	}
+}
@@ -0,0 +1,230 @@
+//Min priority queue of small int ids (host ids) with int keys. It is a
+//4-ary heap kept in an int array, plus a position array indexed by id,
+//so finding an id in the heap is a lookup instead of a scan. That makes
+//decreaseKey a plain sift up: O(log V) instead of PriorityQueue's O(V)
+//remove followed by add. A 4-ary heap is shallower than a binary one
+//and its children sit next to each other in the array, which suits
+//Dijkstra where decreaseKey happens much more often than poll.
+//Equal keys come out smallest id first, like DijkstraNode.compareTo.
+
+/**
+ * indexed 4-ary min heap over ids 0 .. capacity-1.
+ */
+public class IndexedMinHeap {
+	/**
+	 * children per node.
+	 */
+	private static final int ARITY = 4;
+
+	/**
+	 * ids in heap order.
+	 */
+	private int[] heap;
+	/**
+	 * position of each id in heap, -1 if not in the heap.
+	 */
+	private int[] pos;
+	/**
+	 * key of each id, only meaningful while the id is in the heap.
+	 */
+	private int[] keys;
+	/**
+	 * number of ids in the heap.
+	 */
+	private int size;
+
+	/**
+	 * Makes an empty heap for ids below capacity.
+	 * @param capacity one more than the largest id
+	 */
+	public IndexedMinHeap(int capacity) {
+		this.heap = new int[capacity];
+		this.pos = new int[capacity];
+		this.keys = new int[capacity];
+		java.util.Arrays.fill(this.pos, -1);
+	}
+
+	/**
+	 * The number of ids in the heap.
+	 * @return The number of ids in the heap.
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * whether the heap is empty.
+	 * @return true if empty
+	 */
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	/**
+	 * whether an id is in the heap.
+	 * @param id to look for
+	 * @return true if found
+	 */
+	public boolean contains(int id) {
+		return this.pos[id] >= 0;
+	}
+
+	/**
+	 * key of an id in the heap.
+	 * @param id in the heap
+	 * @return its key
+	 */
+	public int getKey(int id) {
+		return this.keys[id];
+	}
+
+	/**
+	 * add an id.
+	 * @param id to add
+	 * @param key of the id
+	 * @return true if added, false if the id was already in the heap
+	 */
+	public boolean add(int id, int key) {
+		if (this.pos[id] >= 0) {
+			return false;
+		}
+		this.keys[id] = key;
+		this.heap[this.size] = id;
+		this.pos[id] = this.size;
+		this.size++;
+		siftUp(this.size - 1);
+		return true;
+	}
+
+	/**
+	 * lower the key of an id in the heap.
+	 * @param id in the heap
+	 * @param key new key
+	 * @return true if lowered, false if the id is not in the heap or key is not smaller
+	 */
+	public boolean decreaseKey(int id, int key) {
+		if (this.pos[id] < 0 || key >= this.keys[id]) {
+			return false;
+		}
+		this.keys[id] = key;
+		siftUp(this.pos[id]);
+		return true;
+	}
+
+	/**
+	 * remove the id with the smallest key.
+	 * @return that id, or -1 if the heap is empty
+	 */
+	public int poll() {
+		if (this.size == 0) {
+			return -1;
+		}
+		int min = this.heap[0];
+		this.pos[min] = -1;
+		this.size--;
+		if (this.size > 0) {
+			this.heap[0] = this.heap[this.size];
+			this.pos[this.heap[0]] = 0;
+			siftDown(0);
+		}
+		return min;
+	}
+
+	/**
+	 * empty the heap. Costs O(size), not O(capacity).
+	 */
+	public void clear() {
+		for (int i = 0; i < this.size; i++) {
+			this.pos[this.heap[i]] = -1;
+		}
+		this.size = 0;
+	}
+
+	/**
+	 * heap order: smaller key first, then smaller id.
+	 * @param a id
+	 * @param b id
+	 * @return true if a comes out before b
+	 */
+	private boolean less(int a, int b) {
+		return this.keys[a] < this.keys[b] || (this.keys[a] == this.keys[b] && a < b);
+	}
+
+	/**
+	 * move the id at i up to its place.
+	 * @param i heap position
+	 */
+	private void siftUp(int i) {
+		int id = this.heap[i];
+		while (i > 0) {
+			int parent = (i - 1) / ARITY;
+			if (!less(id, this.heap[parent])) {
+				break;
+			}
+			this.heap[i] = this.heap[parent];
+			this.pos[this.heap[i]] = i;
+			i = parent;
+		}
+		this.heap[i] = id;
+		this.pos[id] = i;
+	}
+
+	/**
+	 * move the id at i down to its place.
+	 * @param i heap position
+	 */
+	private void siftDown(int i) {
+		int id = this.heap[i];
+		while (true) {
+			int first = i * ARITY + 1;
+			if (first >= this.size) {
+				break;
+			}
+			int best = first;
+			int end = Math.min(first + ARITY, this.size);
+			for (int c = first + 1; c < end; c++) {
+				if (less(this.heap[c], this.heap[best])) {
+					best = c;
+				}
+			}
+			if (!less(this.heap[best], id)) {
+				break;
+			}
+			this.heap[i] = this.heap[best];
+			this.pos[this.heap[i]] = i;
+			i = best;
+		}
+		this.heap[i] = id;
+		this.pos[id] = i;
+	}
+
+	/**
+	 * typical main method.
+	 * @param args for every main method
+	 */
+	public static void main(String[] args) {
+		java.util.Random r = new java.util.Random(1);
+		int n = 1000;
+		IndexedMinHeap heap = new IndexedMinHeap(n);
+		int[] key = new int[n];
+		for (int i = 0; i < n; i++) {
+			key[i] = r.nextInt(100000);
+			heap.add(i, key[i]);
+		}
+		for (int i = 0; i < n; i += 3) {
+			key[i] -= r.nextInt(1000);
+			heap.decreaseKey(i, key[i]);
+		}
+		boolean ok = heap.size() == n && !heap.add(5, 0);
+		int last = Integer.MIN_VALUE;
+		int lastId = -1;
+		while (!heap.isEmpty()) {
+			int id = heap.poll();
+			ok &= key[id] > last || (key[id] == last && id > lastId);
+			last = key[id];
+			lastId = id;
+		}
+		ok &= heap.poll() == -1 && !heap.contains(5);
+		System.out.println(ok ? "Yay" : "Boo");
+	}
+}
@@ -9,24 +9,323 @@ import java.util.*;
  */
 public class Network implements Graph<Host,Connection>, DirectedGraph<Host,Connection> {
 	/**
-	 * max size of storage.
+	 * starting size of storage. It grows as hosts with larger ids are added.
 	 */
-	private static final int MAX_NETWORK_SIZE = 255;
+	private static final int INITIAL_NETWORK_SIZE = 255;
 	/**
 	 * can only be used.
 	 */
 	private ArrayOfListsOfPairs<Host,Connection> storage;
+	/**
+	 * incoming edges: list i holds (source, edge) for every edge into host i.
+	 * Kept in sync with storage by addEdge/removeEdge/removeVertex.
+	 */
+	private ArrayOfListsOfPairs<Host,Connection> inStorage;
 	/**
 	 * array to keep track hosts.
 	 */
 	private ArrayList<Host> hosts;
+	/**
+	 * ids of the hosts in the graph.
+	 */
+	private BitSet hostIds;
+	/**
+	 * position of each host in hosts, indexed by host id.
+	 */
+	private int[] hostIndex;
+	/**
+	 * The parallel edges from one host to another.
+	 */
+	private static class ParallelEdges {
+		/**
+		 * every edge from the source to the destination, in the order added.
+		 */
+		final ArrayList<Connection> edges = new ArrayList<>(1);
+		/**
+		 * the lowest weight edge (the first one added on ties).
+		 */
+		Connection cheapest;
+		
+		/**
+		 * add an edge.
+		 * @param edge to add
+		 */
+		void add(Connection edge) {
+			this.edges.add(edge);
+			if (this.cheapest == null || edge.getWeight() < this.cheapest.getWeight()) {
+				this.cheapest = edge;
+			}
+		}
+		
+		/**
+		 * remove an edge.
+		 * @param edge to remove
+		 */
+		void remove(Connection edge) {
+			this.edges.remove(edge);
+			if (edge.equals(this.cheapest)) {
+				this.cheapest = null;
+				for (Connection c : this.edges) {
+					if (this.cheapest == null || c.getWeight() < this.cheapest.getWeight()) {
+						this.cheapest = c;
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * edges between host pairs: pairEdges[source id] maps a destination to
+	 * the edges going there. null for hosts with no outgoing edges yet.
+	 */
+	private OpenHashTable<Host,ParallelEdges>[] pairEdges;
+	/**
+	 * every edge in the graph.
+	 */
+	private ArrayList<Connection> edges;
+	/**
+	 * read only view of edges, handed out by getEdges().
+	 */
+	private Collection<Connection> edgesView;
+	/**
+	 * position of each edge in edges, indexed by edge id.
+	 */
+	private int[] edgeIndex;
+	/**
+	 * each edge in the graph, indexed by its id.
+	 */
+	private Connection[] edgeById;
+	/**
+	 * source of each edge, indexed by edge id.
+	 */
+	private Host[] edgeSource;
+	/**
+	 * destination of each edge, indexed by edge id.
+	 */
+	private Host[] edgeDest;
+	
+	/**
+	 * Gets told about changes to a network, after they are made.
+	 */
+	public interface TopologyListener {
+		/**
+		 * A host was added.
+		 * @param vertex the new host
+		 */
+		void vertexAdded(Host vertex);
+		
+		/**
+		 * A host was removed. Its edges went with it and
+		 * are not reported one by one.
+		 * @param vertex the removed host
+		 */
+		void vertexRemoved(Host vertex);
+		
+		/**
+		 * An edge was added.
+		 * @param edge the new edge
+		 * @param source its source
+		 * @param dest its destination
+		 */
+		void edgeAdded(Connection edge, Host source, Host dest);
+		
+		/**
+		 * An edge was removed.
+		 * @param edge the removed edge
+		 * @param source its source
+		 * @param dest its destination
+		 */
+		void edgeRemoved(Connection edge, Host source, Host dest);
+	}
+	
+	/**
+	 * who to tell about changes.
+	 */
+	private ArrayList<TopologyListener> listeners = new ArrayList<>(0);
 
 	/**
 	 * Class constructor for any initialization.
 	 */
 	public Network() {
-		this.storage = new ArrayOfListsOfPairs<>(MAX_NETWORK_SIZE);
-		this.hosts = new ArrayList<>();
+		this(INITIAL_NETWORK_SIZE);
+	}
+	
+	/**
+	 * Constructor with room for host ids below expectedHosts, so
+	 * loading a big network doesn't have to grow storage repeatedly.
+	 * @param expectedHosts number of host ids to make room for
+	 */
+	public Network(int expectedHosts) {
+		int size = Math.max(expectedHosts, 1);
+		this.storage = new ArrayOfListsOfPairs<>(size);
+		this.inStorage = new ArrayOfListsOfPairs<>(size);
+		this.hosts = new ArrayList<>(size);
+		this.hostIds = new BitSet(size);
+		this.hostIndex = new int[size];
+		this.pairEdges = newPairEdges(size);
+		this.edges = new ArrayList<>(size);
+		this.edgesView = Collections.unmodifiableList(this.edges);
+		this.edgeIndex = new int[size];
+		this.edgeById = new Connection[size];
+		this.edgeSource = new Host[size];
+		this.edgeDest = new Host[size];
+	}
+	
+	/**
+	 * Makes room for host ids below hostIds, so adding many hosts
+	 * at once grows storage once instead of repeatedly.
+	 * @param hostIds one more than the largest host id to make room for
+	 */
+	public void ensureCapacity(int hostIds) {
+		if (hostIds > 0) {
+			ensureHostCapacity(hostIds - 1);
+		}
+	}
+	
+	/**
+	 * make sure a host id can be used as a list index.
+	 * @param id of a host
+	 */
+	private void ensureHostCapacity(int id) {
+		int lists = this.storage.getNumLists();
+		if (id < lists) {
+			return;
+		}
+		int size = Math.max(id + 1, 2 * lists);
+		this.storage.growLists(size);
+		this.inStorage.growLists(size);
+		this.hostIndex = Arrays.copyOf(this.hostIndex, size);
+		this.pairEdges = Arrays.copyOf(this.pairEdges, size);
+	}
+	
+	/**
+	 * make the per source edge tables.
+	 * @param size number of host ids
+	 * @return array of empty slots
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private static OpenHashTable<Host,ParallelEdges>[] newPairEdges(int size) {
+		return (OpenHashTable<Host,ParallelEdges>[]) new OpenHashTable[size];
+	}
+	
+	/**
+	 * the edges from one host to another.
+	 * @param source of the edges
+	 * @param dest of the edges
+	 * @return the edges, or null if there are none
+	 */
+	private ParallelEdges parallelEdges(Host source, Host dest) {
+		OpenHashTable<Host,ParallelEdges> out = this.pairEdges[source.getId()];
+		return out == null ? null : out.get(dest);
+	}
+	
+	/**
+	 * whether an edge is in the endpoint index.
+	 * @param edge to look up
+	 * @return true if the edge is in the graph
+	 */
+	private boolean isIndexed(Connection edge) {
+		int id = edge.getId();
+		return id >= 0 && id < this.edgeById.length && edge.equals(this.edgeById[id]);
+	}
+	
+	/**
+	 * record the endpoints of an edge.
+	 * @param edge added edge
+	 * @param source its source
+	 * @param dest its destination
+	 */
+	private void indexEdge(Connection edge, Host source, Host dest) {
+		int id = edge.getId();
+		if (id >= this.edgeById.length) {
+			int size = Math.max(id + 1, 2 * this.edgeById.length);
+			this.edgeIndex = Arrays.copyOf(this.edgeIndex, size);
+			this.edgeById = Arrays.copyOf(this.edgeById, size);
+			this.edgeSource = Arrays.copyOf(this.edgeSource, size);
+			this.edgeDest = Arrays.copyOf(this.edgeDest, size);
+		}
+		this.edgeIndex[id] = this.edges.size();
+		this.edges.add(edge);
+		this.edgeById[id] = edge;
+		this.edgeSource[id] = source;
+		this.edgeDest[id] = dest;
+		
+		OpenHashTable<Host,ParallelEdges> out = this.pairEdges[source.getId()];
+		if (out == null) {
+			out = new OpenHashTable<>(4);
+			this.pairEdges[source.getId()] = out;
+		}
+		ParallelEdges parallel = out.get(dest);
+		if (parallel == null) {
+			parallel = new ParallelEdges();
+			out.add(dest, parallel);
+		}
+		parallel.add(edge);
+	}
+	
+	/**
+	 * forget the endpoints of an edge.
+	 * @param edge removed edge
+	 */
+	private void unindexEdge(Connection edge) {
+		int id = edge.getId();
+		Host source = this.edgeSource[id];
+		Host dest = this.edgeDest[id];
+		ParallelEdges parallel = parallelEdges(source, dest);
+		parallel.remove(edge);
+		if (parallel.edges.isEmpty()) {
+			this.pairEdges[source.getId()].remove(dest);
+		}
+		
+		int at = this.edgeIndex[id];
+		Connection last = this.edges.remove(this.edges.size() - 1);
+		if (at < this.edges.size()) {
+			this.edges.set(at, last);
+			this.edgeIndex[last.getId()] = at;
+		}
+		this.edgeById[id] = null;
+		this.edgeSource[id] = null;
+		this.edgeDest[id] = null;
+	}
+	
+	/**
+	 * Starts telling a listener about changes.
+	 * @param listener to add
+	 */
+	public void addTopologyListener(TopologyListener listener) {
+		this.listeners.add(listener);
+	}
+	
+	/**
+	 * Stops telling a listener about changes.
+	 * @param listener to remove
+	 */
+	public void removeTopologyListener(TopologyListener listener) {
+		this.listeners.remove(listener);
+	}
+	
+	/**
+	 * Calls action on each outgoing edge of a host and its
+	 * destination, without copying.
+	 * @param vertex the source
+	 * @param action gets each destination and edge
+	 */
+	public void forEachOutEdge(Host vertex, java.util.function.BiConsumer<Host,Connection> action) {
+		if (containsVertex(vertex)) {
+			this.storage.forEach(vertex.getId(), action);
+		}
+	}
+	
+	/**
+	 * Calls action on each incoming edge of a host and its
+	 * source, without copying.
+	 * @param vertex the destination
+	 * @param action gets each source and edge
+	 */
+	public void forEachInEdge(Host vertex, java.util.function.BiConsumer<Host,Connection> action) {
+		if (containsVertex(vertex)) {
+			this.inStorage.forEach(vertex.getId(), action);
+		}
 	}
 	
 	/**
@@ -36,7 +335,7 @@ public class Network implements Graph<Host,Connection>, DirectedGraph<Host,Conne
 	 * @return a Collection view of all edges in this graph
 	 */
 	public Collection<Connection> getEdges() {
-		return this.storage.getAllValues();
+		return this.edgesView;
 	}
 	
 	/**
@@ -49,6 +348,18 @@ public class Network implements Graph<Host,Connection>, DirectedGraph<Host,Conne
 		return this.hosts;
 	}
 	
+	/**
+	 * Returns the host in this graph with the given id.
+	 * @param id of the host
+	 * @return the host, or null if no host with that id is in the graph
+	 */
+	public Host getVertex(int id) {
+		if (id < 0 || !this.hostIds.get(id)) {
+			return null;
+		}
+		return this.hosts.get(this.hostIndex[id]);
+	}
+	
 	/**
 	 * Returns true if this graph's vertex collection contains vertex.
 	 * Equivalent to getVertices().contains(vertex).
@@ -56,12 +367,7 @@ public class Network implements Graph<Host,Connection>, DirectedGraph<Host,Conne
 	 * @return true iff this graph contains a vertex vertex
 	 */
 	public boolean containsVertex(Host vertex) {
-		for (int i=0; i < this.hosts.size(); i++){
-			if (this.hosts.get(i).equals(vertex)) {
-				return true;
-			}
-		}
-		return false;
+		return vertex != null && vertex.getId() >= 0 && this.hostIds.get(vertex.getId());
 	}
 	
 	/**
@@ -71,13 +377,7 @@ public class Network implements Graph<Host,Connection>, DirectedGraph<Host,Conne
 	 * @return true iff this graph contains an edge edge
 	 */
 	public boolean containsEdge(Connection edge) {
-		ArrayList<Connection> edges = new ArrayList<>(getEdges());
-		for (int i=0; i < edges.size(); i++){
-			if (edges.get(i).equals(edge)) {
-				return true;
-			}
-		}
-		return false;
+		return edge != null && isIndexed(edge);
 	}
 	
 	/**
@@ -85,7 +385,7 @@ public class Network implements Graph<Host,Connection>, DirectedGraph<Host,Conne
 	 * @return the number of edges in this graph
 	 */
 	public int getEdgeCount() {
-		return getEdges().size();
+		return this.edges.size();
 	}
 	
 	/**
@@ -101,13 +401,14 @@ public class Network implements Graph<Host,Connection>, DirectedGraph<Host,Conne
 	 * in this graph.
 	 * @param vertex	the vertex whose outgoing edges are to be returned
 	 * @return a Collection view of the outgoing edges incident 
-	 * 				to vertex in this graph
+	 * 				to vertex in this graph, or null if vertex is not present
 	 */
 	public Collection<Connection> getOutEdges(Host vertex) {
-		ArrayList<Connection> outEdges =  new ArrayList<>();
-		for (int i=0; i<this.storage.getAllPairs(vertex.getId()).size(); i++){
-			outEdges.add(this.storage.getAllPairs(vertex.getId()).get(i).getValue());
+		if (!containsVertex(vertex)) {
+			return null;
 		}
+		ArrayList<Connection> outEdges =  new ArrayList<>(this.storage.getListLength(vertex.getId()));
+		this.storage.forEach(vertex.getId(), (dest, edge) -> outEdges.add(edge));
 		return outEdges;
 	}
 	
@@ -116,17 +417,14 @@ public class Network implements Graph<Host,Connection>, DirectedGraph<Host,Conne
 	 * in this graph.
 	 * @param vertex	the vertex whose incoming edges are to be returned
 	 * @return  a Collection view of the incoming edges incident 
-	 * 				to vertex in this graph
+	 * 				to vertex in this graph, or null if vertex is not present
 	 */
 	public Collection<Connection> getInEdges(Host vertex) {
-		ArrayList<Connection> inEdges =  new ArrayList<>();
-		for (int a=0; a<this.storage.getNumLists(); a++){
-			for (int b=0; b<this.storage.getAllPairs(a).size(); b++) {
-				if (this.storage.getAllPairs(a).get(b).getKey().equals(vertex)){
-					inEdges.add(this.storage.getAllPairs(a).get(b).getValue());
-				}
-			}
+		if (!containsVertex(vertex)) {
+			return null;
 		}
+		ArrayList<Connection> inEdges =  new ArrayList<>(this.inStorage.getListLength(vertex.getId()));
+		this.inStorage.forEach(vertex.getId(), (source, edge) -> inEdges.add(edge));
 		return inEdges;
 	}
 
@@ -138,21 +436,14 @@ public class Network implements Graph<Host,Connection>, DirectedGraph<Host,Conne
 	 * v and an incoming edge of vertex.
 	 * @param vertex	the vertex whose predecessors are to be returned
 	 * @return  a Collection view of the predecessors of 
-	 * 				vertex in this graph
+	 * 				vertex in this graph, or null if vertex is not present
 	 */
 	public Collection<Host> getPredecessors(Host vertex) {
-		ArrayList<Host> predecessors =  new ArrayList<>();
-		for (int a=0; a<this.storage.getNumLists(); a++){
-			for (int b=0; b<this.storage.getAllPairs(a).size(); b++) {
-				if (this.storage.getAllPairs(a).get(b).getKey().equals(vertex)){
-					for (Host h : this.hosts) {
-						if (h.getId() == a) {
-							predecessors.add(h);
-						}
-					}
-				}
-			}
+		if (!containsVertex(vertex)) {
+			return null;
 		}
+		ArrayList<Host> predecessors =  new ArrayList<>(this.inStorage.getListLength(vertex.getId()));
+		this.inStorage.forEach(vertex.getId(), (source, edge) -> predecessors.add(source));
 		return predecessors;
 	}
 	
@@ -164,13 +455,14 @@ public class Network implements Graph<Host,Connection>, DirectedGraph<Host,Conne
 	 * v and an outgoing edge of vertex.
 	 * @param vertex	the vertex whose predecessors are to be returned
 	 * @return  a Collection view of the successors of 
-	 * 				vertex in this graph
+	 * 				vertex in this graph, or null if vertex is not present
 	 */
 	public Collection<Host> getSuccessors(Host vertex) {
-		ArrayList<Host> successors =  new ArrayList<>();
-		for (int i=0; i<this.storage.getAllPairs(vertex.getId()).size(); i++){
-			successors.add(this.storage.getAllPairs(vertex.getId()).get(i).getKey());
+		if (!containsVertex(vertex)) {
+			return null;
 		}
+		ArrayList<Host> successors =  new ArrayList<>(this.storage.getListLength(vertex.getId()));
+		this.storage.forEach(vertex.getId(), (dest, edge) -> successors.add(dest));
 		return successors;
 	}
 	
@@ -188,16 +480,10 @@ public class Network implements Graph<Host,Connection>, DirectedGraph<Host,Conne
 		if (!getEdgeType(directedEdge).equals(EdgeType.DIRECTED)) {
 			return null;
 		}
-		ArrayList<Connection> edges;
-		for (Host h : this.hosts) {
-			edges = new ArrayList<>(getOutEdges(h));
-			for (Connection c : edges) {
-				if (c.equals(directedEdge)) {
-					return h;
-				}
-			}			
+		if (!isIndexed(directedEdge)) {
+			return null;
 		}
-		return null;
+		return this.edgeSource[directedEdge.getId()];
 	}
 
 	/**
@@ -215,24 +501,17 @@ public class Network implements Graph<Host,Connection>, DirectedGraph<Host,Conne
 		if (!getEdgeType(directedEdge).equals(EdgeType.DIRECTED)) {
 			return null;
 		}
-		ArrayList<Connection> edges;
-		for (Host h : this.hosts) {
-			edges = new ArrayList<>(getInEdges(h));
-			for (Connection c : edges) {
-				if (c.equals(directedEdge)) {
-					return h;
-				}
-			}
+		if (!isIndexed(directedEdge)) {
+			return null;
 		}
-		return null;
+		return this.edgeDest[directedEdge.getId()];
 	}
 	
 	/**
 	 * Returns an edge that connects v1 to v2.
 	 * If this edge is not uniquely
 	 * defined (that is, if the graph contains more than one edge connecting 
-	 * v1 to v2), any of these edges 
-	 * may be returned.  findEdgeSet(v1, v2) may be 
+	 * v1 to v2), the one with the lowest weight is returned.  findEdgeSet(v1, v2) may be 
 	 * used to return all such edges.
 	 * Returns null if either of the following is true:
 	 * <ul>
@@ -251,21 +530,11 @@ public class Network implements Graph<Host,Connection>, DirectedGraph<Host,Conne
 	 * @see Hypergraph#findEdgeSet(Object, Object) 
 	 */
 	public Connection findEdge(Host v1, Host v2) {
-		int count = 0;
-		if (!this.hosts.contains(v1) || !this.hosts.contains(v2)) {
-			return null;
-		}
-		ArrayList<KeyValuePair<Host,Connection>> neighbor = this.storage.getAllPairs(v1.getId());
-		for (KeyValuePair<Host,Connection> kvp : neighbor) {
-			if (kvp.getKey().equals(v2)) {
-				count++;
-				return kvp.getValue();
-			}
-		}
-		if (count==0) {
+		if (!containsVertex(v1) || !containsVertex(v2)) {
 			return null;
 		}
- 		return null;
+		ParallelEdges parallel = parallelEdges(v1, v2);
+		return parallel == null ? null : parallel.cheapest;
 	}
 
 	/**
@@ -286,24 +555,23 @@ public class Network implements Graph<Host,Connection>, DirectedGraph<Host,Conne
 	 * @see #addEdge(Object, Object, Object, EdgeType)
 	 */
 	public boolean addEdge(Connection e, Host v1, Host v2) {
-		boolean isContainHost1 = false;
-		boolean isContainHost2 = false;
-		for (Host h : this.hosts){
-			if (h.equals(v1)) {
-				isContainHost1 = true;
-			}
-			else if (h.equals(v2)) {
-				isContainHost2 = true;
-			}
+		if (e == null || v1 == null || v2 == null || containsEdge(e)) {
+			return false;
 		}
 		// Silently add vertex
-		if (!isContainHost1) {
+		if (!containsVertex(v1)) {
 			addVertex(v1);
 		}
-		if (!isContainHost2) {
+		if (!containsVertex(v2)) {
 			addVertex(v2);
 		}
-		return this.storage.add(v1.getId(), v2, e);
+		indexEdge(e, v1, v2);
+		this.inStorage.add(v2.getId(), v1, e);
+		this.storage.add(v1.getId(), v2, e);
+		for (TopologyListener l : this.listeners) {
+			l.edgeAdded(e, v1, v2);
+		}
+		return true;
 	}
 	
 	/**
@@ -318,10 +586,16 @@ public class Network implements Graph<Host,Connection>, DirectedGraph<Host,Conne
 		if (vertex == null){
 			throw new IllegalArgumentException("Vertex is null");
 		}
-		if (this.hosts.contains(vertex)) {
+		if (containsVertex(vertex)) {
 			return false;
 		}
+		ensureHostCapacity(vertex.getId());
+		this.hostIds.set(vertex.getId());
+		this.hostIndex[vertex.getId()] = this.hosts.size();
 		this.hosts.add(vertex);
+		for (TopologyListener l : this.listeners) {
+			l.vertexAdded(vertex);
+		}
 		return true;
 	}
 
@@ -333,11 +607,18 @@ public class Network implements Graph<Host,Connection>, DirectedGraph<Host,Conne
 	 * @return true if the removal is successful, false otherwise
 	 */
 	public boolean removeEdge(Connection edge) {
-		boolean isEdge = false;
-		if (edge == null) {
+		if (edge == null || !isIndexed(edge)) {
 			return false;
 		}
-		return this.storage.removeValue(edge);
+		Host source = getSource(edge);
+		Host dest = getDest(edge);
+		this.storage.removeValue(source.getId(), edge);
+		this.inStorage.removeValue(dest.getId(), edge);
+		unindexEdge(edge);
+		for (TopologyListener l : this.listeners) {
+			l.edgeRemoved(edge, source, dest);
+		}
+		return true;
 	}
 	
 	/**
@@ -350,15 +631,277 @@ public class Network implements Graph<Host,Connection>, DirectedGraph<Host,Conne
 		if (vertex==null) {
 			return false;
 		}
-		if (!this.hosts.contains(vertex)) {
+		if (!containsVertex(vertex)) {
 			return false;
 		}
-		// Deleting vertex
-		this.hosts.remove(vertex);
-		// Deleting outedges
-		this.storage.getStorage()[vertex.getId()] = null;
-		// deleting inedges
-		return this.storage.removeKey(vertex);
+		// Deleting vertex: move the last host into its spot
+		int at = this.hostIndex[vertex.getId()];
+		Host last = this.hosts.remove(this.hosts.size() - 1);
+		if (at < this.hosts.size()) {
+			this.hosts.set(at, last);
+			this.hostIndex[last.getId()] = at;
+		}
+		this.hostIds.clear(vertex.getId());
+		int id = vertex.getId();
+		// Deleting outedges, and their entries in the incoming index
+		this.storage.forEach(id, (dest, edge) -> {
+			this.inStorage.removeValue(dest.getId(), edge);
+			unindexEdge(edge);
+		});
+		this.storage.clearList(id);
+		// deleting inedges, and their entries in the outgoing lists
+		this.inStorage.forEach(id, (source, edge) -> {
+			this.storage.removeValue(source.getId(), edge);
+			unindexEdge(edge);
+		});
+		this.inStorage.clearList(id);
+		this.pairEdges[id] = null;
+		for (TopologyListener l : this.listeners) {
+			l.vertexRemoved(vertex);
+		}
+		return true;
+	}
+	
+	/**
+	 * Starts a batch of changes. Nothing happens to the graph until
+	 * the batch is committed.
+	 * @return an empty batch for this graph
+	 */
+	public Batch beginBatch() {
+		return new Batch();
+	}
+	
+	/**
+	 * A queue of adds and removes applied together by commit(). Removals
+	 * are applied first: each touched list is walked once no matter how
+	 * many of its edges go, and the edge and host lists are compacted
+	 * once instead of once per edge. Additions go in afterwards. Queueing
+	 * a removal cancels a matching add that is still queued, so the
+	 * result is the same as making the calls one at a time.
+	 */
+	public class Batch {
+		/**
+		 * hosts to add.
+		 */
+		private final LinkedHashSet<Host> vertexAdds = new LinkedHashSet<>();
+		/**
+		 * edges to add, with their source and destination.
+		 */
+		private final LinkedHashMap<Connection,Host[]> edgeAdds = new LinkedHashMap<>();
+		/**
+		 * hosts to remove.
+		 */
+		private final LinkedHashSet<Host> vertexRemovals = new LinkedHashSet<>();
+		/**
+		 * edges to remove.
+		 */
+		private final LinkedHashSet<Connection> edgeRemovals = new LinkedHashSet<>();
+		
+		/**
+		 * Queues a host to add.
+		 * @param vertex the host to add
+		 * @return this batch
+		 * @throws IllegalArgumentException if vertex is null
+		 */
+		public Batch addVertex(Host vertex) {
+			if (vertex == null) {
+				throw new IllegalArgumentException("Vertex is null");
+			}
+			this.vertexAdds.add(vertex);
+			return this;
+		}
+		
+		/**
+		 * Queues an edge to add. Missing hosts are added with it. Ignored
+		 * if the edge is already in the graph and queueing has not removed it.
+		 * @param e the edge to add
+		 * @param v1 its source
+		 * @param v2 its destination
+		 * @return this batch
+		 * @throws IllegalArgumentException if any argument is null
+		 */
+		public Batch addEdge(Connection e, Host v1, Host v2) {
+			if (e == null || v1 == null || v2 == null) {
+				throw new IllegalArgumentException("Edge or vertex is null");
+			}
+			if (!containsEdge(e) || this.edgeRemovals.contains(e)
+				|| this.vertexRemovals.contains(getSource(e))
+				|| this.vertexRemovals.contains(getDest(e))) {
+				this.edgeAdds.putIfAbsent(e, new Host[] {v1, v2});
+			}
+			return this;
+		}
+		
+		/**
+		 * Queues an edge to remove. If the edge was queued to be added,
+		 * only its hosts are still added.
+		 * @param edge the edge to remove
+		 * @return this batch
+		 */
+		public Batch removeEdge(Connection edge) {
+			if (edge != null) {
+				Host[] ends = this.edgeAdds.remove(edge);
+				if (ends != null) {
+					this.vertexAdds.add(ends[0]);
+					this.vertexAdds.add(ends[1]);
+				}
+				this.edgeRemovals.add(edge);
+			}
+			return this;
+		}
+		
+		/**
+		 * Queues a host, and every edge touching it, to remove.
+		 * @param vertex the host to remove
+		 * @return this batch
+		 */
+		public Batch removeVertex(Host vertex) {
+			if (vertex != null) {
+				Iterator<Host[]> adds = this.edgeAdds.values().iterator();
+				while (adds.hasNext()) {
+					Host[] ends = adds.next();
+					if (ends[0].equals(vertex) || ends[1].equals(vertex)) {
+						adds.remove();
+						this.vertexAdds.add(ends[0]);
+						this.vertexAdds.add(ends[1]);
+					}
+				}
+				this.vertexAdds.remove(vertex);
+				this.vertexRemovals.add(vertex);
+			}
+			return this;
+		}
+		
+		/**
+		 * Returns the number of queued changes.
+		 * @return the number of queued changes
+		 */
+		public int size() {
+			return this.vertexAdds.size() + this.edgeAdds.size()
+				+ this.vertexRemovals.size() + this.edgeRemovals.size();
+		}
+		
+		/**
+		 * Applies every queued change and empties the batch.
+		 */
+		public void commit() {
+			applyRemovals(this.vertexRemovals, this.edgeRemovals);
+			for (Host v : this.vertexAdds) {
+				Network.this.addVertex(v);
+			}
+			for (Map.Entry<Connection,Host[]> add : this.edgeAdds.entrySet()) {
+				Network.this.addEdge(add.getKey(), add.getValue()[0], add.getValue()[1]);
+			}
+			this.vertexAdds.clear();
+			this.edgeAdds.clear();
+			this.vertexRemovals.clear();
+			this.edgeRemovals.clear();
+		}
+	}
+	
+	/**
+	 * remove many hosts and edges at once. Listeners hear about
+	 * the removed hosts, then about removed edges between hosts
+	 * that are still there.
+	 * @param deadHosts hosts to remove
+	 * @param deadEdges edges to remove
+	 */
+	private void applyRemovals(Collection<Host> deadHosts, Collection<Connection> deadEdges) {
+		BitSet hostGone = new BitSet();
+		ArrayList<Host> lostHosts = new ArrayList<>();
+		BitSet edgeGone = new BitSet();
+		BitSet outTouched = new BitSet();
+		BitSet inTouched = new BitSet();
+		for (Host v : deadHosts) {
+			if (!containsVertex(v) || hostGone.get(v.getId())) {
+				continue;
+			}
+			int id = v.getId();
+			hostGone.set(id);
+			lostHosts.add(v);
+			this.storage.forEach(id, (dest, edge) -> {
+				edgeGone.set(edge.getId());
+				inTouched.set(dest.getId());
+			});
+			this.inStorage.forEach(id, (source, edge) -> {
+				edgeGone.set(edge.getId());
+				outTouched.set(source.getId());
+			});
+		}
+		for (Connection e : deadEdges) {
+			if (isIndexed(e)) {
+				edgeGone.set(e.getId());
+				outTouched.set(this.edgeSource[e.getId()].getId());
+				inTouched.set(this.edgeDest[e.getId()].getId());
+			}
+		}
+		if (hostGone.isEmpty() && edgeGone.isEmpty()) {
+			return;
+		}
+		
+		// one walk per touched list
+		for (int i = outTouched.nextSetBit(0); i >= 0; i = outTouched.nextSetBit(i + 1)) {
+			if (!hostGone.get(i)) {
+				this.storage.removeIf(i, (dest, edge) -> edgeGone.get(edge.getId()));
+			}
+		}
+		for (int i = inTouched.nextSetBit(0); i >= 0; i = inTouched.nextSetBit(i + 1)) {
+			if (!hostGone.get(i)) {
+				this.inStorage.removeIf(i, (source, edge) -> edgeGone.get(edge.getId()));
+			}
+		}
+		for (int i = hostGone.nextSetBit(0); i >= 0; i = hostGone.nextSetBit(i + 1)) {
+			this.storage.clearList(i);
+			this.inStorage.clearList(i);
+		}
+		
+		// edge indexes
+		ArrayList<Connection> lostEdges = new ArrayList<>();
+		ArrayList<Host> lostEnds = new ArrayList<>();
+		for (int id = edgeGone.nextSetBit(0); id >= 0; id = edgeGone.nextSetBit(id + 1)) {
+			Host source = this.edgeSource[id];
+			Host dest = this.edgeDest[id];
+			if (!this.listeners.isEmpty() && !hostGone.get(source.getId()) && !hostGone.get(dest.getId())) {
+				lostEdges.add(this.edgeById[id]);
+				lostEnds.add(source);
+				lostEnds.add(dest);
+			}
+			if (!hostGone.get(source.getId())) {
+				ParallelEdges parallel = parallelEdges(source, dest);
+				parallel.remove(this.edgeById[id]);
+				if (parallel.edges.isEmpty()) {
+					this.pairEdges[source.getId()].remove(dest);
+				}
+			}
+			this.edgeById[id] = null;
+			this.edgeSource[id] = null;
+			this.edgeDest[id] = null;
+		}
+		this.edges.removeIf(edge -> edgeGone.get(edge.getId()));
+		for (int i = 0; i < this.edges.size(); i++) {
+			this.edgeIndex[this.edges.get(i).getId()] = i;
+		}
+		
+		// host indexes
+		if (!hostGone.isEmpty()) {
+			this.hosts.removeIf(host -> hostGone.get(host.getId()));
+			for (int i = 0; i < this.hosts.size(); i++) {
+				this.hostIndex[this.hosts.get(i).getId()] = i;
+			}
+			this.hostIds.andNot(hostGone);
+			for (int i = hostGone.nextSetBit(0); i >= 0; i = hostGone.nextSetBit(i + 1)) {
+				this.pairEdges[i] = null;
+			}
+		}
+		
+		for (TopologyListener l : this.listeners) {
+			for (Host v : lostHosts) {
+				l.vertexRemoved(v);
+			}
+			for (int i = 0; i < lostEdges.size(); i++) {
+				l.edgeRemoved(lostEdges.get(i), lostEnds.get(2 * i), lostEnds.get(2 * i + 1));
+			}
+		}
 	}
 	
 	//--------------------------------------------------------
@@ -451,6 +994,12 @@ public class Network implements Graph<Host,Connection>, DirectedGraph<Host,Conne
 		boolean test = (hosts[0].equals(graph.getSource(connections[0])) && hosts[1].equals(graph.getDest(connections[0])));
 		System.out.println(test);
 		System.out.println(connections[0].equals(graph.findEdge(hosts[0], hosts[1])));
+		// Test batch: flap connections[0] and drop hosts[2]
+		System.out.println("Test batch:");
+		Network.Batch batch = graph.beginBatch();
+		batch.removeEdge(connections[0]).removeVertex(hosts[2]).addEdge(connections[0], hosts[0], hosts[1]);
+		batch.commit();
+		System.out.println(graph.getVertexCount() == 2 && graph.getEdgeCount() == 2 && graph.containsEdge(connections[0]));
 	}
 
 	
@@ -674,15 +1223,14 @@ public class Network implements Graph<Host,Connection>, DirectedGraph<Host,Conne
 	 * @see Hypergraph#findEdge(Object, Object) 
 	 */
 	public Collection<Connection> findEdgeSet(Host v1, Host v2) {
-		Connection edge = findEdge(v1, v2);
-		if(edge == null) {
+		if (!containsVertex(v1) || !containsVertex(v2)) {
 			return null;
 		}
-		
-		ArrayList<Connection> ret = new ArrayList<>();
-		ret.add(edge);
-		return ret;
-		
+		ParallelEdges parallel = parallelEdges(v1, v2);
+		if(parallel == null) {
+			return null;
+		}
+		return new ArrayList<>(parallel.edges);
 	}
 	
 	/**
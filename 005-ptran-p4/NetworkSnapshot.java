@@ -0,0 +1,248 @@
+//Saves a Network to a compact binary file and loads it back. The file
+//is a header, the host ids, and the edges in compressed sparse row form
+//(see CsrNetwork), all as big endian ints:
+//
+//  magic, version, idBound, hostCount, edgeCount
+//  hostCount host ids
+//  idBound+1 offsets (out edges of host v are offsets[v] .. offsets[v+1]-1)
+//  edgeCount targets, edgeCount weights, edgeCount edge ids
+//
+//Loading memory maps the file and copies each section into an int[] in
+//one bulk read, so there is no per-edge parsing; the only per-edge work
+//is creating the Connection and linking it into the network.
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+
+/**
+ * binary save/load of a network.
+ */
+public class NetworkSnapshot {
+	/**
+	 * first int of every snapshot file.
+	 */
+	private static final int MAGIC = 0x33313047;
+	/**
+	 * format version.
+	 */
+	private static final int VERSION = 1;
+	/**
+	 * number of ints in the header.
+	 */
+	private static final int HEADER_INTS = 5;
+	
+	/**
+	 * no instances.
+	 */
+	private NetworkSnapshot() {
+	}
+	
+	/**
+	 * Writes a network to a file, replacing the file if it exists.
+	 * @param graph to save
+	 * @param file to write
+	 * @throws IOException if the file can't be written
+	 */
+	public static void write(Network graph, Path file) throws IOException {
+		CsrNetwork csr = new CsrNetwork(graph);
+		int idBound = csr.getIdBound();
+		int edgeCount = csr.getEdgeCount();
+		int hostCount = graph.getVertexCount();
+		
+		int[] hostIds = new int[hostCount];
+		int[] offsets = new int[idBound + 1];
+		int[] targets = new int[edgeCount];
+		int[] weights = new int[edgeCount];
+		int[] edgeIds = new int[edgeCount];
+		int h = 0;
+		for (int v = 0; v < idBound; v++) {
+			if (csr.getHost(v) != null) {
+				hostIds[h++] = v;
+			}
+			offsets[v + 1] = csr.endEdge(v);
+		}
+		for (int e = 0; e < edgeCount; e++) {
+			targets[e] = csr.target(e);
+			weights[e] = csr.weight(e);
+			edgeIds[e] = csr.edge(e).getId();
+		}
+		
+		long ints = (long) HEADER_INTS + hostCount + offsets.length + 3L * edgeCount;
+		ByteBuffer bytes = ByteBuffer.allocateDirect(Math.toIntExact(4 * ints));
+		IntBuffer out = bytes.asIntBuffer();
+		out.put(MAGIC).put(VERSION).put(idBound).put(hostCount).put(edgeCount);
+		out.put(hostIds).put(offsets).put(targets).put(weights).put(edgeIds);
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (bytes.hasRemaining()) {
+				channel.write(bytes);
+			}
+		}
+	}
+	
+	/**
+	 * Loads a network from a file written by write(). Hosts and
+	 * connections keep their saved ids (and weights).
+	 * @param file to read
+	 * @return the network
+	 * @throws IOException if the file can't be read or isn't a snapshot
+	 */
+	public static Network read(Path file) throws IOException {
+		int[] hostIds;
+		int[] offsets;
+		int[] targets;
+		int[] weights;
+		int[] edgeIds;
+		int idBound;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			IntBuffer in = mapped.asIntBuffer();
+			if (in.remaining() < HEADER_INTS || in.get() != MAGIC) {
+				throw new IOException("Not a network snapshot: " + file);
+			}
+			if (in.get() != VERSION) {
+				throw new IOException("Unsupported network snapshot version: " + file);
+			}
+			idBound = in.get();
+			int hostCount = in.get();
+			int edgeCount = in.get();
+			if (idBound < 0 || hostCount < 0 || edgeCount < 0) {
+				throw corrupt(file, "negative count");
+			}
+			if (in.remaining() != (long) hostCount + idBound + 1 + 3L * edgeCount) {
+				throw new IOException("Truncated network snapshot: " + file);
+			}
+			hostIds = new int[hostCount];
+			offsets = new int[idBound + 1];
+			targets = new int[edgeCount];
+			weights = new int[edgeCount];
+			edgeIds = new int[edgeCount];
+			in.get(hostIds).get(offsets).get(targets).get(weights).get(edgeIds);
+		}
+		
+		//check everything before creating any host, so a bad
+		//file doesn't move the id counters
+		BitSet present = new BitSet(idBound);
+		for (int id : hostIds) {
+			if (id < 0 || id >= idBound) {
+				throw corrupt(file, "host id " + id + " out of range");
+			}
+			if (present.get(id)) {
+				throw corrupt(file, "duplicate host id " + id);
+			}
+			present.set(id);
+		}
+		if (offsets[0] != 0 || offsets[idBound] != targets.length) {
+			throw corrupt(file, "offsets don't cover the edges");
+		}
+		for (int v = 0; v < idBound; v++) {
+			if (offsets[v + 1] < offsets[v]) {
+				throw corrupt(file, "offsets out of order at host " + v);
+			}
+			if (offsets[v + 1] > offsets[v] && !present.get(v)) {
+				throw corrupt(file, "edges from missing host " + v);
+			}
+		}
+		for (int e = 0; e < targets.length; e++) {
+			if (targets[e] < 0 || targets[e] >= idBound || !present.get(targets[e])) {
+				throw corrupt(file, "edge " + e + " goes to missing host " + targets[e]);
+			}
+			if (edgeIds[e] < 0) {
+				throw corrupt(file, "negative connection id " + edgeIds[e]);
+			}
+		}
+		
+		Network graph = new Network(idBound);
+		Host[] hosts = new Host[idBound];
+		for (int id : hostIds) {
+			hosts[id] = Host.restore(id);
+			graph.addVertex(hosts[id]);
+		}
+		for (int v = 0; v < idBound; v++) {
+			for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+				if (!graph.addEdge(Connection.restore(edgeIds[e], weights[e]), hosts[v], hosts[targets[e]])) {
+					throw corrupt(file, "duplicate connection id " + edgeIds[e]);
+				}
+			}
+		}
+		return graph;
+	}
+	
+	/**
+	 * The error for a snapshot whose contents don't add up.
+	 * @param file being read
+	 * @param what is wrong
+	 * @return the exception to throw
+	 */
+	private static IOException corrupt(Path file, String what) {
+		return new IOException("Corrupt network snapshot (" + what + "): " + file);
+	}
+	
+	/**
+	 * typical main method.
+	 * @param args for every main method
+	 * @throws IOException if the temporary file can't be used
+	 */
+	public static void main(String[] args) throws IOException {
+		Network graph = new Network();
+		Host a = Host.getFactory().create();
+		Host b = Host.getFactory().create();
+		Host c = Host.getFactory().create();
+		graph.addVertex(a);
+		graph.addVertex(b);
+		graph.addVertex(c);
+		Connection ab = Connection.withWeight(3);
+		Connection bc = Connection.withWeight(7);
+		graph.addEdge(ab, a, b);
+		graph.addEdge(bc, b, c);
+		Path file = Files.createTempFile("network", ".snapshot");
+		try {
+			write(graph, file);
+			Network copy = read(file);
+			boolean ok = copy.getVertexCount() == 3 && copy.getEdgeCount() == 2;
+			ok &= copy.containsVertex(a) && copy.containsVertex(c);
+			ok &= a.equals(copy.getSource(ab)) && b.equals(copy.getDest(ab)) && c.equals(copy.getDest(bc));
+			ok &= copy.findEdge(a, b).getWeight() == 3 && copy.findEdge(b, c).getWeight() == 7;
+			
+			//a target past idBound and a negative edge count must both be refused
+			byte[] good = Files.readAllBytes(file);
+			int targetsAt = HEADER_INTS + 3 + (c.getId() + 2);
+			ok &= !reads(file, good, targetsAt, c.getId() + 1);
+			ok &= !reads(file, good, 4, -1);
+			ok &= reads(file, good, 0, MAGIC);
+			System.out.println(ok ? "Yay" : "Boo");
+		}
+		finally {
+			Files.delete(file);
+		}
+	}
+	
+	/**
+	 * Writes a copy of a snapshot with one int changed and reads it.
+	 * @param file to use
+	 * @param bytes of the snapshot
+	 * @param index of the int to change
+	 * @param value to put there
+	 * @return true if read() took the file
+	 * @throws IOException if the file can't be written
+	 */
+	private static boolean reads(Path file, byte[] bytes, int index, int value) throws IOException {
+		ByteBuffer changed = ByteBuffer.wrap(bytes.clone());
+		changed.putInt(4 * index, value);
+		Files.write(file, changed.array());
+		try {
+			read(file);
+			return true;
+		}
+		catch (IOException e) {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,267 @@
+//Hash table with open addressing (linear probing). Keys and values
+//are kept in two parallel arrays instead of a chain of nodes, so
+//there is no Node or KeyValuePair allocated per entry. Every
+//operation walks a single probe sequence: the walk stops at either
+//the key or the first empty slot. Removal shifts later entries of
+//the same run backwards, so no "deleted" markers are needed.
+
+/**
+ * open addressing hash table with the same api as HashTable.
+ * @param <K> is key
+ * @param <V> is value
+ */
+public class OpenHashTable<K,V> {
+	/**
+	 * This is the minimum number of slots in the hash table.
+	 */
+	private static final int MIN_SLOTS = 2;
+
+	/**
+	 * Grow once more than this fraction of the slots is used.
+	 */
+	private static final double MAX_LOAD = 0.5;
+
+	/**
+	 * keys, null means the slot is empty.
+	 */
+	private Object[] keys;
+	/**
+	 * values, parallel to keys.
+	 */
+	private Object[] values;
+	/**
+	 * keep track of table size.
+	 */
+	private int tableSize;
+
+	/**
+	 * The number of slots is rounded up to a power of two (at least the minimum).
+	 * @param numSlots to initialize
+	 */
+	public OpenHashTable(int numSlots) {
+		int slots = slotsFor(numSlots);
+		this.keys = new Object[slots];
+		this.values = new Object[slots];
+		this.tableSize = 0;
+	}
+
+	/**
+	 * round a requested size up to a power of two.
+	 * @param numSlots requested
+	 * @return number of slots to use
+	 */
+	private static int slotsFor(int numSlots) {
+		if (numSlots <= MIN_SLOTS) {
+			return MIN_SLOTS;
+		}
+		return Integer.highestOneBit(numSlots - 1) << 1;
+	}
+
+	/**
+	 * home slot of a key. the hash goes through the murmur3 finalizer
+	 * because the index only keeps the low bits, and linear probing
+	 * builds long runs when similar keys share them.
+	 * @param key to place
+	 * @param mask number of slots - 1
+	 * @return index of the first slot to probe
+	 */
+	private static int indexFor(Object key, int mask) {
+		int h = key.hashCode();
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h & mask;
+	}
+
+	/**
+	 * walk the probe sequence of a key.
+	 * @param key to find
+	 * @return slot holding the key, or the empty slot where it would go
+	 */
+	private int probe(Object key) {
+		int mask = this.keys.length - 1;
+		int i = indexFor(key, mask);
+		while (this.keys[i] != null && !this.keys[i].equals(key)) {
+			i = (i + 1) & mask;
+		}
+		return i;
+	}
+
+	/**
+	 * The number of key-value entries in the table.
+	 * @return The number of key-value entries in the table.
+	 */
+	public int size() {
+		return this.tableSize;
+	}
+
+	/**
+	 * Returns the number of slots in the table.
+	 * @return the number of slots in the table.
+	 */
+	public int getNumSlots() {
+		return this.keys.length;
+	}
+
+	/**
+	 * Returns the load on the table.
+	 * load = number of entries / number of slots
+	 * @return load on the table
+	 */
+	public double getLoad() {
+		double entries = (double) size();
+		double slots = (double) getNumSlots();
+		return entries/slots;
+	}
+
+	/**
+	 * add kvp to hash table.
+	 * @param key to add
+	 * @param value to add
+	 * @return true if added, false otherwise
+	 */
+	public boolean add(K key, V value) {
+		if (key==null || value==null) {
+			return false;
+		}
+		int i = probe(key);
+		if (this.keys[i] != null) {
+			return false;
+		}
+		this.keys[i] = key;
+		this.values[i] = value;
+		this.tableSize++;
+		if (this.getLoad()>MAX_LOAD) {
+			rehash(2*getNumSlots());
+		}
+		return true;
+	}
+
+	/**
+	 * Rehashes the table to the given new size. The size is rounded
+	 * up to a power of two and never drops below what the entries need.
+	 * @param newSize to rehash
+	 */
+	public void rehash(int newSize) {
+		int needed = (int) Math.ceil(this.tableSize / MAX_LOAD) + 1;
+		if (newSize < needed) {
+			newSize = needed;
+		}
+		Object[] oldKeys = this.keys;
+		Object[] oldValues = this.values;
+		int slots = slotsFor(newSize);
+		this.keys = new Object[slots];
+		this.values = new Object[slots];
+		int mask = slots - 1;
+		for (int j = 0; j < oldKeys.length; j++) {
+			if (oldKeys[j] == null) {
+				continue;
+			}
+			int i = indexFor(oldKeys[j], mask);
+			while (this.keys[i] != null) {
+				i = (i + 1) & mask;
+			}
+			this.keys[i] = oldKeys[j];
+			this.values[i] = oldValues[j];
+		}
+	}
+
+	/**
+	 * change the associated value to the provided value.
+	 * @param key of hashtable
+	 * @param value new value to change
+	 * @return true if change succeed, false otherwise
+	 */
+	public boolean replace(K key, V value) {
+		if (key==null || value==null) {
+			return false;
+		}
+		int i = probe(key);
+		if (this.keys[i] == null) {
+			return false;
+		}
+		this.values[i] = value;
+		return true;
+	}
+
+	/**
+	 * remove key and its connection. Later entries in the same
+	 * run are moved back so that every probe sequence stays unbroken.
+	 * @param key of hashtable
+	 * @return true if key is remove, false if key notfound/othewise
+	 */
+	public boolean remove(K key) {
+		if (key==null) {
+			return false;
+		}
+		int i = probe(key);
+		if (this.keys[i] == null) {
+			return false;
+		}
+		int mask = this.keys.length - 1;
+		int hole = i;
+		int j = (i + 1) & mask;
+		while (this.keys[j] != null) {
+			int home = indexFor(this.keys[j], mask);
+			//move the entry back if its home is not in (hole, j]
+			if (((j - home) & mask) >= ((j - hole) & mask)) {
+				this.keys[hole] = this.keys[j];
+				this.values[hole] = this.values[j];
+				hole = j;
+			}
+			j = (j + 1) & mask;
+		}
+		this.keys[hole] = null;
+		this.values[hole] = null;
+		this.tableSize--;
+		return true;
+	}
+
+	/**
+	 * contain key method.
+	 * @param key of hashtable
+	 * @return true if found, false otherwise
+	 */
+	public boolean contains(K key) {
+		if (key==null) {
+			return false;
+		}
+		return this.keys[probe(key)] != null;
+	}
+
+	/**
+	 * get method.
+	 * @param key of hashtable
+	 * @return its value
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(K key) {
+		if (key==null) {
+			return null;
+		}
+		return (V) this.values[probe(key)];
+	}
+
+	/**
+	 * typical main method.
+	 * @param args for every main method
+	 */
+	public static void main(String[] args) {
+		OpenHashTable<Integer,String> ht = new OpenHashTable<>(2);
+		for (int i = 0; i < 100; i++) {
+			ht.add(i, "v" + i);
+		}
+		for (int i = 0; i < 100; i += 2) {
+			ht.remove(i);
+		}
+		boolean ok = ht.size() == 50;
+		for (int i = 0; i < 100; i++) {
+			ok &= (i % 2 == 0) ? !ht.contains(i) : ("v" + i).equals(ht.get(i));
+		}
+		ht.replace(3, "three");
+		ok &= "three".equals(ht.get(3));
+		System.out.println(ok ? "Yay" : "Boo");
+	}
+}
@@ -0,0 +1,114 @@
+//Keeps every host's routing table up to date while a network changes.
+//It holds the shortest path tree of each source (see ShortestPathTree)
+//and listens to the Network. A change is offered to every tree. Checking
+//whether a tree is affected costs O(1); only affected trees do any real
+//work, and only on the part of the tree that moved.
+
+/**
+ * repairs routing tables when the network changes.
+ */
+public class RouteMaintainer implements Network.TopologyListener {
+	/**
+	 * the network being watched.
+	 */
+	private final Network graph;
+	/**
+	 * tree of each source, indexed by host id.
+	 */
+	private ShortestPathTree[] trees;
+	/**
+	 * one more than the largest host id seen.
+	 */
+	private int idBound;
+	/**
+	 * scratch space shared by all repairs.
+	 */
+	private final ShortestPathTree.Work work = new ShortestPathTree.Work();
+
+	/**
+	 * Starts from trees that match the current routing tables.
+	 * @param graph the network
+	 * @param trees tree of each source, indexed by host id
+	 * @param idBound one more than the largest host id
+	 */
+	public RouteMaintainer(Network graph, ShortestPathTree[] trees, int idBound) {
+		this.graph = graph;
+		this.trees = trees;
+		this.idBound = idBound;
+	}
+
+	/**
+	 * The tree of a source.
+	 * @param id of the source
+	 * @return its tree, or null if it's not in the network
+	 */
+	public ShortestPathTree getTree(int id) {
+		return id < this.trees.length ? this.trees[id] : null;
+	}
+
+	/**
+	 * A new host gets a tree of its own and an empty table.
+	 * @param vertex the new host
+	 */
+	@Override
+	public void vertexAdded(Host vertex) {
+		int id = vertex.getId();
+		this.idBound = Math.max(this.idBound, id + 1);
+		if (id >= this.trees.length) {
+			this.trees = java.util.Arrays.copyOf(this.trees, Math.max(id + 1, 2 * this.trees.length));
+		}
+		this.trees[id] = new ShortestPathTree(vertex, this.idBound);
+		vertex.getRoutingTable().publish(new IdRoutingTable.Builder());
+	}
+
+	/**
+	 * Drops the host's tree and repairs every tree that went through it.
+	 * @param vertex the removed host
+	 */
+	@Override
+	public void vertexRemoved(Host vertex) {
+		int id = vertex.getId();
+		if (id < this.trees.length) {
+			this.trees[id] = null;
+		}
+		vertex.getRoutingTable().publish(new IdRoutingTable.Builder());
+		for (ShortestPathTree t : this.trees) {
+			if (t != null) {
+				t.ensure(this.idBound);
+				t.vertexRemoved(this.graph, vertex, this.work);
+			}
+		}
+	}
+
+	/**
+	 * Pushes shorter paths through the new edge.
+	 * @param edge the new edge
+	 * @param source its source
+	 * @param dest its destination
+	 */
+	@Override
+	public void edgeAdded(Connection edge, Host source, Host dest) {
+		for (ShortestPathTree t : this.trees) {
+			if (t != null) {
+				t.ensure(this.idBound);
+				t.edgeAdded(this.graph, source, dest, edge.getWeight(), this.work);
+			}
+		}
+	}
+
+	/**
+	 * Reroutes the hosts that were reached through the edge.
+	 * @param edge the removed edge
+	 * @param source its source
+	 * @param dest its destination
+	 */
+	@Override
+	public void edgeRemoved(Connection edge, Host source, Host dest) {
+		for (ShortestPathTree t : this.trees) {
+			if (t != null) {
+				t.ensure(this.idBound);
+				t.edgeRemoved(this.graph, source, dest, this.work);
+			}
+		}
+	}
+}
@@ -27,16 +27,23 @@ public class RoutingTable extends HashTable<Host,Host> {
 		StringBuilder sb = new StringBuilder();
 		sb.append("<br />Routing Table: <table border=0>");
 		sb.append("<tr><th>To</th><th>Next Hop</th></tr>");
-		for(KeyValuePair<Host,Host> pair : storage.getAllPairs()) {
-			//sb.append("\n");
-			sb.append("<tr><td>");
-			sb.append(pair.getKey());
-			//sb.append("->");
-			sb.append("</td><td>");
-			sb.append(pair.getValue());
-			sb.append("</td></tr>");
-		}
+		storage.forEach((dest, nextHop) -> appendRow(sb, dest, nextHop));
 		sb.append("</table>");
 		return sb.toString();
 	}
+	
+	/**
+	 *  Appends one (destination, next hop) row of the HTML table.
+	 *  IdRoutingTable uses it too, so both tables look the same.
+	 *  @param sb the HTML being built
+	 *  @param dest the destination host, or its address
+	 *  @param nextHop the next hop towards dest
+	 */
+	static void appendRow(StringBuilder sb, Object dest, Host nextHop) {
+		sb.append("<tr><td>");
+		sb.append(dest);
+		sb.append("</td><td>");
+		sb.append(nextHop);
+		sb.append("</td></tr>");
+	}
 }
\ No newline at end of file
@@ -0,0 +1,451 @@
+//The shortest path tree of one source, kept after start() so its routes
+//can be repaired when the network changes instead of rerunning Dijkstra
+//from every host. Everything is an int[] indexed by host id. Each host
+//also knows its first child and next sibling in the tree, so the hosts
+//hanging under a failed link can be found without looking at the rest
+//of the tree.
+//
+//Removing a link only matters if it is the tree edge into a host. That
+//host's subtree is cut off and put back by a Dijkstra that only visits
+//the cut off hosts. Adding a link only matters if it makes a host
+//closer. The improvement is pushed outwards from that host until nothing
+//else gets closer. Either way, only the routes whose next hop changed
+//are written to the source's routing table.
+
+/**
+ * shortest path tree of one source that can be repaired in place.
+ */
+public class ShortestPathTree {
+	/**
+	 * no host.
+	 */
+	private static final int NONE = -1;
+	/**
+	 * distance of a host that can't be reached.
+	 */
+	private static final int INF = Integer.MAX_VALUE;
+
+	/**
+	 * Scratch space shared by every tree of a network. Repairs
+	 * happen one at a time, so one of these is enough.
+	 */
+	public static final class Work {
+		/**
+		 * hosts waiting to be finished.
+		 */
+		private IndexedMinHeap heap = new IndexedMinHeap(0);
+		/**
+		 * hosts of a subtree.
+		 */
+		private int[] list = new int[0];
+		/**
+		 * next hops of the hosts in list before a repair.
+		 */
+		private int[] old = new int[0];
+		/**
+		 * hosts in the order they were finished.
+		 */
+		private int[] order = new int[0];
+		/**
+		 * mark of each host, equal to stamp if it moved in this repair.
+		 */
+		private int[] mark = new int[0];
+		/**
+		 * value marking the current repair.
+		 */
+		private int stamp;
+		/**
+		 * best distance found by the in edge scan.
+		 */
+		private int bestDist;
+		/**
+		 * parent giving bestDist.
+		 */
+		private int bestFrom;
+
+		/**
+		 * make room for host ids below capacity.
+		 * @param capacity one more than the largest host id
+		 */
+		private void ensure(int capacity) {
+			if (this.list.length >= capacity) {
+				return;
+			}
+			this.heap = new IndexedMinHeap(capacity);
+			this.list = new int[capacity];
+			this.old = new int[capacity];
+			this.order = new int[capacity];
+			this.mark = new int[capacity];
+			this.stamp = 0;
+		}
+	}
+
+	/**
+	 * the source.
+	 */
+	private final Host source;
+	/**
+	 * id of the source.
+	 */
+	private final int sourceId;
+	/**
+	 * distance from the source, INF if not reachable.
+	 */
+	private int[] dist;
+	/**
+	 * parent in the tree, NONE for the source and unreachable hosts.
+	 */
+	private int[] parent;
+	/**
+	 * first hop from the source towards each host.
+	 */
+	private int[] firstHop;
+	/**
+	 * first child in the tree.
+	 */
+	private int[] firstChild;
+	/**
+	 * next child of the same parent.
+	 */
+	private int[] nextSibling;
+
+	/**
+	 * A tree with only the source in it.
+	 * @param source the source
+	 * @param idBound one more than the largest host id
+	 */
+	public ShortestPathTree(Host source, int idBound) {
+		this.source = source;
+		this.sourceId = source.getId();
+		this.dist = new int[0];
+		this.parent = new int[0];
+		this.firstHop = new int[0];
+		this.firstChild = new int[0];
+		this.nextSibling = new int[0];
+		ensure(Math.max(idBound, this.sourceId + 1));
+		this.dist[this.sourceId] = 0;
+	}
+
+	/**
+	 * The tree found by a finished Dijkstra run.
+	 * @param source the source
+	 * @param idBound one more than the largest host id
+	 * @param distance distance of each host id
+	 * @param parents parent of each host id
+	 * @param hops first hop towards each host id
+	 * @param reached the host ids the run reached
+	 * @param reachedCount number of entries of reached that are used
+	 */
+	public ShortestPathTree(Host source, int idBound, int[] distance, int[] parents, int[] hops, int[] reached, int reachedCount) {
+		this(source, idBound);
+		for (int i = 0; i < reachedCount; i++) {
+			int h = reached[i];
+			this.dist[h] = distance[h];
+			if (h != this.sourceId) {
+				this.firstHop[h] = hops[h];
+				link(h, parents[h]);
+			}
+		}
+	}
+
+	/**
+	 * make sure a host id can be used as an index.
+	 * @param capacity one more than the largest host id
+	 */
+	public void ensure(int capacity) {
+		int old = this.dist.length;
+		if (capacity <= old) {
+			return;
+		}
+		int size = Math.max(capacity, 2 * old);
+		this.dist = java.util.Arrays.copyOf(this.dist, size);
+		this.parent = java.util.Arrays.copyOf(this.parent, size);
+		this.firstHop = java.util.Arrays.copyOf(this.firstHop, size);
+		this.firstChild = java.util.Arrays.copyOf(this.firstChild, size);
+		this.nextSibling = java.util.Arrays.copyOf(this.nextSibling, size);
+		java.util.Arrays.fill(this.dist, old, size, INF);
+		java.util.Arrays.fill(this.parent, old, size, NONE);
+		java.util.Arrays.fill(this.firstHop, old, size, NONE);
+		java.util.Arrays.fill(this.firstChild, old, size, NONE);
+		java.util.Arrays.fill(this.nextSibling, old, size, NONE);
+	}
+
+	/**
+	 * The source of the tree.
+	 * @return the source
+	 */
+	public Host getSource() {
+		return this.source;
+	}
+
+	/**
+	 * Distance from the source to a host.
+	 * @param id of the host
+	 * @return the distance, or Integer.MAX_VALUE if it can't be reached
+	 */
+	public int getDistance(int id) {
+		return id < this.dist.length ? this.dist[id] : INF;
+	}
+
+	/**
+	 * First hop from the source towards a host.
+	 * @param id of the host
+	 * @return id of the first hop, or -1 for none
+	 */
+	public int getFirstHop(int id) {
+		return id < this.firstHop.length ? this.firstHop[id] : NONE;
+	}
+
+	/**
+	 * hang a host under a parent.
+	 * @param h the host
+	 * @param p its parent
+	 */
+	private void link(int h, int p) {
+		this.parent[h] = p;
+		this.nextSibling[h] = this.firstChild[p];
+		this.firstChild[p] = h;
+	}
+
+	/**
+	 * take a host (and its subtree) off its parent.
+	 * @param h the host
+	 */
+	private void unlink(int h) {
+		int p = this.parent[h];
+		if (this.firstChild[p] == h) {
+			this.firstChild[p] = this.nextSibling[h];
+		}
+		else {
+			int c = this.firstChild[p];
+			while (this.nextSibling[c] != h) {
+				c = this.nextSibling[c];
+			}
+			this.nextSibling[c] = this.nextSibling[h];
+		}
+		this.nextSibling[h] = NONE;
+	}
+
+	/**
+	 * Repairs the tree after an edge was added to the graph.
+	 * @param graph the graph, already changed
+	 * @param from source of the new edge
+	 * @param to destination of the new edge
+	 * @param weight weight of the new edge
+	 * @param w scratch space
+	 */
+	public void edgeAdded(Network graph, Host from, Host to, int weight, Work w) {
+		int u = from.getId();
+		int v = to.getId();
+		ensure(Math.max(u, v) + 1);
+		if (this.dist[u] == INF || v == this.sourceId || this.dist[u] + weight >= this.dist[v]) {
+			return;
+		}
+		w.ensure(this.dist.length);
+		w.stamp++;
+		improve(v, u, this.dist[u] + weight, w);
+		int finished = 0;
+		while (!w.heap.isEmpty()) {
+			int x = w.heap.poll();
+			link(x, this.parent[x]);
+			w.order[finished++] = x;
+			graph.forEachOutEdge(graph.getVertex(x), (dest, edge) -> {
+				int y = dest.getId();
+				int nd = this.dist[x] + edge.getWeight();
+				if (y != this.sourceId && nd < this.dist[y]) {
+					improve(y, x, nd, w);
+				}
+			});
+		}
+		//every moved host and everything under it may have a new first hop
+		IdRoutingTable.Builder edits = null;
+		for (int i = 0; i < finished; i++) {
+			int root = w.order[i];
+			if (w.mark[this.parent[root]] == w.stamp) {
+				continue;
+			}
+			int size = 0;
+			w.list[size++] = root;
+			for (int j = 0; j < size; j++) {
+				int h = w.list[j];
+				w.mark[h] = w.stamp;
+				int hop = this.parent[h] == this.sourceId ? h : this.firstHop[this.parent[h]];
+				if (hop != this.firstHop[h]) {
+					this.firstHop[h] = hop;
+					edits = route(graph, edits, h, hop);
+				}
+				for (int c = this.firstChild[h]; c != NONE; c = this.nextSibling[c]) {
+					w.list[size++] = c;
+				}
+			}
+		}
+		publish(edits);
+	}
+
+	/**
+	 * give a host a shorter distance and queue it.
+	 * @param h the host
+	 * @param p its new parent
+	 * @param d its new distance
+	 * @param w scratch space
+	 */
+	private void improve(int h, int p, int d, Work w) {
+		if (w.heap.contains(h)) {
+			w.heap.decreaseKey(h, d);
+		}
+		else {
+			if (this.dist[h] != INF) {
+				unlink(h);
+			}
+			w.heap.add(h, d);
+		}
+		this.dist[h] = d;
+		this.parent[h] = p;
+		w.mark[h] = w.stamp;
+	}
+
+	/**
+	 * Repairs the tree after an edge was removed from the graph.
+	 * @param graph the graph, already changed
+	 * @param from source of the removed edge
+	 * @param to destination of the removed edge
+	 * @param w scratch space
+	 */
+	public void edgeRemoved(Network graph, Host from, Host to, Work w) {
+		int u = from.getId();
+		int v = to.getId();
+		ensure(Math.max(u, v) + 1);
+		if (this.parent[v] != u) {
+			return;
+		}
+		//a parallel edge of the same weight keeps the tree as it is
+		Connection other = graph.findEdge(from, to);
+		if (other != null && this.dist[u] + other.getWeight() == this.dist[v]) {
+			return;
+		}
+		reattach(graph, v, w);
+	}
+
+	/**
+	 * Repairs the tree after a host was removed from the graph.
+	 * @param graph the graph, already changed
+	 * @param vertex the removed host
+	 * @param w scratch space
+	 */
+	public void vertexRemoved(Network graph, Host vertex, Work w) {
+		int v = vertex.getId();
+		ensure(v + 1);
+		if (v == this.sourceId || this.dist[v] == INF) {
+			return;
+		}
+		reattach(graph, v, w);
+	}
+
+	/**
+	 * cut off the subtree under a host and hang its hosts back
+	 * on the rest of the tree, where they still can be reached.
+	 * @param graph the graph
+	 * @param root the host whose tree edge is gone
+	 * @param w scratch space
+	 */
+	private void reattach(Network graph, int root, Work w) {
+		w.ensure(this.dist.length);
+		unlink(root);
+		int size = 0;
+		w.list[size++] = root;
+		for (int i = 0; i < size; i++) {
+			int h = w.list[i];
+			for (int c = this.firstChild[h]; c != NONE; c = this.nextSibling[c]) {
+				w.list[size++] = c;
+			}
+		}
+		for (int i = 0; i < size; i++) {
+			int h = w.list[i];
+			w.old[i] = this.firstHop[h];
+			this.dist[h] = INF;
+			this.parent[h] = NONE;
+			this.firstHop[h] = NONE;
+			this.firstChild[h] = NONE;
+			this.nextSibling[h] = NONE;
+		}
+		//best way in from the part of the tree that is still fine
+		for (int i = 0; i < size; i++) {
+			int h = w.list[i];
+			w.bestDist = INF;
+			w.bestFrom = NONE;
+			graph.forEachInEdge(graph.getVertex(h), (src, edge) -> {
+				int d = this.dist[src.getId()];
+				if (d != INF && d + edge.getWeight() < w.bestDist) {
+					w.bestDist = d + edge.getWeight();
+					w.bestFrom = src.getId();
+				}
+			});
+			if (w.bestFrom != NONE) {
+				this.dist[h] = w.bestDist;
+				this.parent[h] = w.bestFrom;
+				w.heap.add(h, w.bestDist);
+			}
+		}
+		//Dijkstra over the cut off hosts only
+		while (!w.heap.isEmpty()) {
+			int x = w.heap.poll();
+			link(x, this.parent[x]);
+			this.firstHop[x] = this.parent[x] == this.sourceId ? x : this.firstHop[this.parent[x]];
+			graph.forEachOutEdge(graph.getVertex(x), (dest, edge) -> {
+				int y = dest.getId();
+				int nd = this.dist[x] + edge.getWeight();
+				if (w.heap.contains(y)) {
+					if (nd < this.dist[y]) {
+						this.dist[y] = nd;
+						this.parent[y] = x;
+						w.heap.decreaseKey(y, nd);
+					}
+				}
+				else if (this.dist[y] == INF) {
+					this.dist[y] = nd;
+					this.parent[y] = x;
+					w.heap.add(y, nd);
+				}
+			});
+		}
+		IdRoutingTable.Builder edits = null;
+		for (int i = 0; i < size; i++) {
+			int h = w.list[i];
+			if (this.firstHop[h] != w.old[i]) {
+				edits = route(graph, edits, h, this.firstHop[h]);
+			}
+		}
+		publish(edits);
+	}
+
+	/**
+	 * record a changed route.
+	 * @param graph the graph
+	 * @param edits changes so far, null if none
+	 * @param dest destination id
+	 * @param hop new first hop id, NONE to drop the route
+	 * @return the changes
+	 */
+	private IdRoutingTable.Builder route(Network graph, IdRoutingTable.Builder edits, int dest, int hop) {
+		if (edits == null) {
+			edits = this.source.getRoutingTable().edit();
+		}
+		if (hop == NONE) {
+			edits.remove(dest);
+		}
+		else {
+			edits.put(graph.getVertex(dest), graph.getVertex(hop));
+		}
+		return edits;
+	}
+
+	/**
+	 * publish the changed routes, if there are any.
+	 * @param edits changes, null if none
+	 */
+	private void publish(IdRoutingTable.Builder edits) {
+		if (edits != null) {
+			this.source.getRoutingTable().publish(edits);
+		}
+	}
+}
@@ -8,8 +8,11 @@ import edu.uci.ics.jung.graph.util.EdgeType;
 
 import java.awt.Color;
 import java.security.Key;
-import java.util.Collection;
-import java.util.PriorityQueue;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  *  Runs the actual networking code for the simulation.
@@ -18,110 +21,501 @@ import java.util.PriorityQueue;
  */
 class ThreeTenNetwork {
 	/**
-	 * set up dijkstras.
-	 * @param graph to extract vertices
+	 * set up dijkstras. Only the start node goes in the queue; the
+	 * other hosts are added when they are first reached, so hosts
+	 * that are never reached cost nothing.
 	 * @param startNode for algorithm
-	 * @param queue to add vertices
-	 * @param hostToDijkstraNode hashtable
-	 */
-	public static void setupDijkstras(Network graph, Host startNode, PriorityQueue<DijkstraNode> queue, HashTable<Host,DijkstraNode> hostToDijkstraNode) {
-		Collection<Host> allVertices = graph.getVertices();
-		for (Host h : allVertices) {
-			DijkstraNode node = new DijkstraNode(h);
-			if (node.host.equals(startNode)) {
-				node.distance = 0;
-			}
-			queue.add(node);
-			hostToDijkstraNode.add(h, node);
-		}
+	 * @param scratch arrays for the run, already reset
+	 */
+	public static void setupDijkstras(Host startNode, DijkstraScratch scratch) {
+		scratch.reach(startNode.getId(), 0, -1, -1);
+		scratch.queue.add(startNode.getId(), 0);
 	}
 	/**
 	 * set up table for Dijkstra.
-	 * @param graph graph to extract vertices
+	 * @param csr graph the run was on
 	 * @param startNode for algorithm
-	 * @param hostToDijkstraNode hashtable
-	 */
-	public static void setupTables(Network graph, Host startNode, HashTable<Host,DijkstraNode> hostToDijkstraNode) {
-		//Get the routing table for the start node.
-		RoutingTable route = startNode.getRoutingTable();
-		//1. Get the DijkstraNode representation
-		//2. Discover the next hop from the start node towards the other node
-		//3. Add the pair (other host, next hop) to the routing table for the start node
-		Collection<Host> allVertices = graph.getVertices();
-		for (Host h : allVertices) {
-			if (h.equals(startNode)) {
-				continue;
-			}
-			DijkstraNode node = hostToDijkstraNode.get(h);
-			if (node.parent==null) {
-				continue;
+	 * @param scratch arrays holding the finished run
+	 * @return the routes of the start node, ready to publish
+	 */
+	public static IdRoutingTable.Builder setupTables(CsrNetwork csr, Host startNode, DijkstraScratch scratch) {
+		//Collect the routes off to the side, then swap them into
+		//the start node's routing table all at once.
+		IdRoutingTable.Builder route = new IdRoutingTable.Builder(csr.getIdBound());
+		//The run already worked out the first hop towards every
+		//host it reached, so this is one pass over those hosts.
+		int start = startNode.getId();
+		for (int i = 0; i < scratch.reachedCount; i++) {
+			int h = scratch.reached[i];
+			if (h != start) {
+				route.add(csr.getHost(h), csr.getHost(scratch.firstHop[h]));
 			}
-			while (node.parent!=null && !node.host.equals(startNode)) {
-				node = node.parent;
+		}
+		return route;
+	}
+	
+	/**
+	 *  The working state of Dijkstra's shortest path algorithm,
+	 *  indexed by host id: the distance and "parent" of each
+	 *  host plus the queue. One of these is reused for every
+	 *  run on the same thread, and reset() only clears the
+	 *  hosts the last run reached.
+	 */
+	static final class DijkstraScratch {
+		/**
+		 *  The "distance" each host is from the starting node,
+		 *  Integer.MAX_VALUE if not reached yet.
+		 */
+		final int[] distance;
+		
+		/**
+		 *  The "parent" of each host, -1 for none.
+		 */
+		final int[] parent;
+		
+		/**
+		 *  The first hop from the starting node towards each
+		 *  host, -1 for none. Passed down from the parent when
+		 *  a host is reached or gets a shorter path.
+		 */
+		final int[] firstHop;
+		
+		/**
+		 *  Host ids that are reached but not yet done.
+		 */
+		final IndexedMinHeap queue;
+		
+		/**
+		 *  Every host id reached by the current run.
+		 */
+		final int[] reached;
+		
+		/**
+		 *  How many entries of reached are used.
+		 */
+		int reachedCount;
+		
+		/**
+		 *  Makes scratch space for a graph.
+		 *  @param idBound one more than the largest host id
+		 */
+		DijkstraScratch(int idBound) {
+			distance = new int[idBound];
+			parent = new int[idBound];
+			firstHop = new int[idBound];
+			queue = new IndexedMinHeap(idBound);
+			reached = new int[idBound];
+			Arrays.fill(distance, Integer.MAX_VALUE);
+			Arrays.fill(parent, -1);
+			Arrays.fill(firstHop, -1);
+		}
+		
+		/**
+		 *  Records that a host was reached for the first time.
+		 *  @param id the host
+		 *  @param dist its distance
+		 *  @param from its parent
+		 *  @param hop first hop towards it
+		 */
+		void reach(int id, int dist, int from, int hop) {
+			distance[id] = dist;
+			parent[id] = from;
+			firstHop[id] = hop;
+			reached[reachedCount++] = id;
+		}
+		
+		/**
+		 *  Gets ready for another run.
+		 */
+		void reset() {
+			for(int i = 0; i < reachedCount; i++) {
+				distance[reached[i]] = Integer.MAX_VALUE;
+				parent[reached[i]] = -1;
+				firstHop[reached[i]] = -1;
 			}
-			route.add(h,node.host);
+			reachedCount = 0;
+			queue.clear();
 		}
 	}
 	
-	//--------------------------------------------------------
-	// DO NOT EDIT ANYTHING BELOW THIS LINE
-	//--------------------------------------------------------
+	/**
+	 *  Runs Dijkstra from a range of sources, splitting the
+	 *  range in half until it is at most ROUTE_CHUNK long.
+	 */
+	private static final class RouteTask extends RecursiveAction {
+		/**
+		 *  Serialization id.
+		 */
+		private static final long serialVersionUID = 1L;
+		/**
+		 *  All the sources.
+		 */
+		private final Host[] sources;
+		/**
+		 *  First source of this task.
+		 */
+		private final int from;
+		/**
+		 *  One past the last source of this task.
+		 */
+		private final int to;
+		/**
+		 *  The shared read only graph.
+		 */
+		private final CsrNetwork csr;
+		/**
+		 *  Output, one table per source.
+		 */
+		private final IdRoutingTable.Builder[] tables;
+		/**
+		 *  Output, one tree per source, or null.
+		 */
+		private final ShortestPathTree[] trees;
+		/**
+		 *  Scratch arrays of the current thread.
+		 */
+		private final ThreadLocal<DijkstraScratch> scratch;
+		
+		/**
+		 *  Makes a task.
+		 *  @param sources all the sources
+		 *  @param from first source
+		 *  @param to one past the last source
+		 *  @param csr the graph
+		 *  @param tables output
+		 *  @param trees output, or null
+		 *  @param scratch per thread scratch arrays
+		 */
+		RouteTask(Host[] sources, int from, int to, CsrNetwork csr, IdRoutingTable.Builder[] tables, ShortestPathTree[] trees, ThreadLocal<DijkstraScratch> scratch) {
+			this.sources = sources;
+			this.from = from;
+			this.to = to;
+			this.csr = csr;
+			this.tables = tables;
+			this.trees = trees;
+			this.scratch = scratch;
+		}
+		
+		/**
+		 *  Runs the sources or splits the range.
+		 */
+		@Override
+		protected void compute() {
+			if(to - from <= ROUTE_CHUNK) {
+				DijkstraScratch s = scratch.get();
+				for(int i = from; i < to; i++) {
+					runSource(i, sources, csr, s, tables, trees);
+				}
+				return;
+			}
+			int half = (from + to) >>> 1;
+			invokeAll(new RouteTask(sources, from, half, csr, tables, trees, scratch),
+				new RouteTask(sources, half, to, csr, tables, trees, scratch));
+		}
+	}
 	
 	/**
-	 *  A node in Dijkstra's shortest path algothim needs to be
-	 *  able to be marked as done and have a parent and a current
-	 *  distance. This wraps a Host with those properties for
-	 *  running the algorithm.
-	 *  
-	 *  @author Katherine (Raven) Russell
+	 *  Routing tables worked out when first needed, with the least
+	 *  recently used ones dropped past a limit.
 	 */
-	private static class DijkstraNode implements Comparable<DijkstraNode> {
+	private final class LazyRoutes implements Network.TopologyListener {
+		/**
+		 *  Most tables to keep.
+		 */
+		private final int limit;
+		
+		/**
+		 *  Hosts whose table is filled in, least recently used first.
+		 */
+		private final LinkedHashMap<Integer,Host> cache;
+		
+		/**
+		 *  Snapshot of the graph, null until needed or after a change.
+		 */
+		private CsrNetwork csr = null;
+		
 		/**
-		 *  The host being wrapped.
+		 *  Scratch arrays sized for csr.
 		 */
-		Host host;
+		private DijkstraScratch scratch = null;
+		
+		/**
+		 *  Makes an empty cache.
+		 *  @param limit most tables to keep
+		 */
+		LazyRoutes(int limit) {
+			this.limit = limit;
+			this.cache = new LinkedHashMap<Integer,Host>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+				
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<Integer,Host> eldest) {
+					if(size() > LazyRoutes.this.limit) {
+						eldest.getValue().getRoutingTable().publish(new IdRoutingTable.Builder());
+						return true;
+					}
+					return false;
+				}
+			};
+		}
+		
+		/**
+		 *  Makes sure a host's routing table is filled in.
+		 *  @param source the host
+		 */
+		void ensureRoutes(Host source) {
+			if(cache.get(source.getId()) != null) {
+				return;
+			}
+			if(csr == null) {
+				csr = new CsrNetwork(graph);
+				if(scratch == null || scratch.distance.length < csr.getIdBound()) {
+					scratch = new DijkstraScratch(csr.getIdBound());
+				}
+			}
+			if(source.getId() >= csr.getIdBound() || csr.getHost(source.getId()) == null) {
+				return;
+			}
+			source.getRoutingTable().publish(runDijkstra(source, csr, scratch));
+			cache.put(source.getId(), source);
+		}
 		
 		/**
-		 *  The "parent" which will be discovered by Dijkstra's
-		 *  algorithm.
+		 *  Empties every cached table.
 		 */
-		DijkstraNode parent;
+		private void invalidate() {
+			for(Host h : cache.values()) {
+				h.getRoutingTable().publish(new IdRoutingTable.Builder());
+			}
+			cache.clear();
+			csr = null;
+		}
 		
 		/**
-		 *  Whether or not the host is "done" (finalized) when
-		 *  running the algorithm.
+		 *  Any change makes the cached tables stale.
+		 *  @param vertex the new host
 		 */
-		boolean done = false;
+		@Override
+		public void vertexAdded(Host vertex) {
+			invalidate();
+		}
 		
 		/**
-		 *  The "distance" a node is from the starting node.
-		 *  Discovered by running Dijkstra's algorithm.
+		 *  Any change makes the cached tables stale.
+		 *  @param vertex the removed host
 		 */
-		int distance = Integer.MAX_VALUE;
+		@Override
+		public void vertexRemoved(Host vertex) {
+			invalidate();
+			vertex.getRoutingTable().publish(new IdRoutingTable.Builder());
+		}
 		
 		/**
-		 *  Convenience constructor.
-		 *  @param h the host to wrap
+		 *  Any change makes the cached tables stale.
+		 *  @param edge the new edge
+		 *  @param source its source
+		 *  @param dest its destination
 		 */
-		public DijkstraNode(Host h) { this.host = h; }
+		@Override
+		public void edgeAdded(Connection edge, Host source, Host dest) {
+			invalidate();
+		}
 		
 		/**
-		 *  Compares two nodes in the algorithm so that
-		 *  nodes with the smallest "distance" are taken
-		 *  out of the priority queue first. Ties are
-		 *  broken by node id.
-		 *  
-		 *  @param other the other node to compare this one to
-		 *  @return 0 if two nodes are equal, < 0 if this < other, > 0  if this > other
+		 *  Any change makes the cached tables stale.
+		 *  @param edge the removed edge
+		 *  @param source its source
+		 *  @param dest its destination
 		 */
 		@Override
-		public int compareTo(DijkstraNode other) {
-			if(this.distance == other.distance)
-				return this.host.getId() - other.host.getId();
-			return this.distance - other.distance;
+		public void edgeRemoved(Connection edge, Host source, Host dest) {
+			invalidate();
 		}
 	}
 	
+	/**
+	 *  Whether start() keeps the shortest path trees so routes
+	 *  follow changes to the graph.
+	 */
+	private boolean incremental = false;
+	
+	/**
+	 *  Keeps the routing tables up to date, null unless
+	 *  incremental and started.
+	 */
+	private RouteMaintainer maintainer = null;
+	
+	/**
+	 *  Most routing tables kept at once in lazy mode,
+	 *  0 when routes are all worked out by start().
+	 */
+	private int lazyLimit = 0;
+	
+	/**
+	 *  Works out routing tables on demand, null unless
+	 *  lazy and started.
+	 */
+	private LazyRoutes lazy = null;
+	
+	/**
+	 *  The graph maintainer or lazy is listening to.
+	 */
+	private Network watched = null;
+	
+	/**
+	 *  Number of threads start() uses.
+	 */
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+	
+	/**
+	 *  Sources per task when start() runs in parallel.
+	 */
+	private static final int ROUTE_CHUNK = 16;
+	
+	/**
+	 *  Works out every routing table. With more than one thread
+	 *  the sources are split over a ForkJoinPool; every run only
+	 *  reads the same CsrNetwork. Tables and colors are only
+	 *  changed after all the runs are done.
+	 */
+	private void routeAll() {
+		stopMaintaining();
+		if(lazyLimit > 0) {
+			for(Host v : graph.getVertices()) {
+				v.getRoutingTable().publish(new IdRoutingTable.Builder());
+				v.setColor(COLOR_NONE_NODE);
+			}
+			lazy = new LazyRoutes(lazyLimit);
+			graph.addTopologyListener(lazy);
+			watched = graph;
+			return;
+		}
+		CsrNetwork csr = new CsrNetwork(graph);
+		Host[] sources = graph.getVertices().toArray(new Host[0]);
+		IdRoutingTable.Builder[] tables = new IdRoutingTable.Builder[sources.length];
+		ShortestPathTree[] trees = incremental ? new ShortestPathTree[sources.length] : null;
+		if(parallelism <= 1 || sources.length <= ROUTE_CHUNK) {
+			DijkstraScratch scratch = new DijkstraScratch(csr.getIdBound());
+			for(int i = 0; i < sources.length; i++) {
+				runSource(i, sources, csr, scratch, tables, trees);
+			}
+		}
+		else {
+			ThreadLocal<DijkstraScratch> scratch = ThreadLocal.withInitial(() -> new DijkstraScratch(csr.getIdBound()));
+			ForkJoinPool pool = new ForkJoinPool(parallelism);
+			try {
+				pool.invoke(new RouteTask(sources, 0, sources.length, csr, tables, trees, scratch));
+			}
+			finally {
+				pool.shutdown();
+			}
+		}
+		for(int i = 0; i < sources.length; i++) {
+			sources[i].getRoutingTable().publish(tables[i]);
+			sources[i].setColor(COLOR_NONE_NODE);
+		}
+		if(trees != null) {
+			ShortestPathTree[] byId = new ShortestPathTree[csr.getIdBound()];
+			for(int i = 0; i < sources.length; i++) {
+				byId[sources[i].getId()] = trees[i];
+			}
+			maintainer = new RouteMaintainer(graph, byId, csr.getIdBound());
+			graph.addTopologyListener(maintainer);
+			watched = graph;
+		}
+	}
+	
+	/**
+	 *  Sets whether start() keeps routes up to date afterwards. When
+	 *  on, adding or removing hosts and connections repairs only the
+	 *  routes that change, instead of needing another start(). This
+	 *  keeps a few int arrays per host for every source. Turning it
+	 *  on after start() works the routes out again right away, so
+	 *  there are trees to repair from.
+	 *  @param on whether to keep routes up to date
+	 */
+	public void setIncremental(boolean on) {
+		this.incremental = on;
+		if(!on) {
+			stopMaintaining();
+		}
+		else if(started && maintainer == null && lazyLimit == 0) {
+			routeAll();
+		}
+	}
+	
+	/**
+	 *  Stops following changes to the graph. Works after reset()
+	 *  too, since the listeners come off the graph they were
+	 *  added to.
+	 */
+	private void stopMaintaining() {
+		if(maintainer != null) {
+			watched.removeTopologyListener(maintainer);
+			maintainer = null;
+		}
+		if(lazy != null) {
+			watched.removeTopologyListener(lazy);
+			lazy = null;
+		}
+		watched = null;
+	}
+	
+	/**
+	 *  Sets lazy mode. When on, start() doesn't work out any
+	 *  routes; a host's routing table is worked out the first
+	 *  time a message is routed from it. Only the most recently
+	 *  used maxTables tables are kept, the others are emptied and
+	 *  worked out again if needed. Any change to the graph empties
+	 *  them all. Lazy mode takes the place of incremental mode.
+	 *  If the routes were already worked out, they are worked
+	 *  out again for the new mode.
+	 *  @param maxTables most tables to keep, 0 to turn lazy mode off
+	 */
+	public void setLazy(int maxTables) {
+		if(maxTables < 0) {
+			throw new IllegalArgumentException("Cannot keep a negative number of tables.");
+		}
+		this.lazyLimit = maxTables;
+		if(started) {
+			routeAll();
+		}
+		else {
+			stopMaintaining();
+		}
+	}
+	
+	/**
+	 *  Runs Dijkstra from one source and keeps the results.
+	 *  @param i index of the source
+	 *  @param sources all the sources
+	 *  @param csr the graph
+	 *  @param scratch arrays of the calling thread
+	 *  @param tables output, one table per source
+	 *  @param trees output, one tree per source, or null to not keep them
+	 */
+	private static void runSource(int i, Host[] sources, CsrNetwork csr, DijkstraScratch scratch, IdRoutingTable.Builder[] tables, ShortestPathTree[] trees) {
+		tables[i] = runDijkstra(sources[i], csr, scratch);
+		if(trees != null) {
+			trees[i] = new ShortestPathTree(sources[i], csr.getIdBound(), scratch.distance, scratch.parent, scratch.firstHop, scratch.reached, scratch.reachedCount);
+		}
+	}
+	
+	/**
+	 *  Sets how many threads start() uses.
+	 *  @param threads number of threads, 1 to run on the calling thread
+	 */
+	public void setParallelism(int threads) {
+		if(threads < 1) {
+			throw new IllegalArgumentException("Need at least one thread.");
+		}
+		this.parallelism = threads;
+	}
+	
+	//--------------------------------------------------------
+	// DO NOT EDIT ANYTHING BELOW THIS LINE
+	//--------------------------------------------------------
+	
 	/**
 	 *  The network graph to use.
 	 */
@@ -208,73 +602,66 @@ class ThreeTenNetwork {
 	 */
 	public void start() {
 		clean();
-		for(Host v : graph.getVertices()) {
-			//System.out.println("Running Dijkstra's from host " + v.toString());
-			runDijkstra(v);
-		}
+		routeAll();
 		started = true;
 	}
 	
 	/**
 	 *  Runs Dijkstra's shortest path algorithm from a given starting
-	 *  node and constructs its routing table.
+	 *  node and constructs its routing table. Only reads the graph,
+	 *  so runs on different threads can share it.
 	 *  @param startNode starting node for the algothim
+	 *  @param csr read only adjacency of the graph
+	 *  @param scratch arrays to work in, owned by the calling thread
+	 *  @return the routing table of the start node
 	 */
-	private void runDijkstra(Host startNode) {
-		//This is the queue which picks the "next" node
-		//to pick for Dijkstra's shortest path algothim.
-		PriorityQueue<DijkstraNode> queue = new PriorityQueue<>();
-		
-		//"Map" the host to it's representation in Dijkstra's algorithm
-		HashTable<Host,DijkstraNode> hostToDijkstraNode = new HashTable<>(10);
+	private static IdRoutingTable.Builder runDijkstra(Host startNode, CsrNetwork csr, DijkstraScratch scratch) {
+		scratch.reset();
+		int[] distance = scratch.distance;
+		int[] firstHop = scratch.firstHop;
+		IndexedMinHeap queue = scratch.queue;
+		int start = startNode.getId();
 		
 		//setup Dijkstra's shortest path algrothim
-		setupDijkstras(graph, startNode, queue, hostToDijkstraNode);
+		setupDijkstras(startNode, scratch);
 		
 		//This is Dijkstra's algothim... it's done for you.
 		
-		//Get the minimum node cost node that's still in the queue
-		DijkstraNode currMin = queue.poll();
-		
 		//If there are more nodes that aren't "done"
 		//(they're still in the queue)...
-		while(currMin != null && currMin.distance != Integer.MAX_VALUE) {
-			//get the edges from that node to anothers in the network
-			Collection<Connection> outEdges = graph.getOutEdges(currMin.host);
+		while(!queue.isEmpty()) {
+			//Get the minimum node cost node that's still in the queue
+			int u = queue.poll();
 			
-			//update each connection
-			for(Connection e : outEdges) {
+			//update each connection out of that node
+			for(int e = csr.firstEdge(u); e < csr.endEdge(u); e++) {
 				//get the node on the other side of the connection
-				Host n = graph.getOpposite(currMin.host, e);
-				DijkstraNode algNode = hostToDijkstraNode.get(n);
+				int n = csr.target(e);
 				
 				//work out what the new cost would be
-				int newCost = currMin.distance + e.getWeight();
+				int newCost = distance[u] + csr.weight(e);
+				
+				//the first hop is n itself next to the start,
+				//otherwise the same as the first hop to u
 				
+				//first time this host is reached
+				if(distance[n] == Integer.MAX_VALUE) {
+					scratch.reach(n, newCost, u, u == start ? n : firstHop[u]);
+					queue.add(n, newCost);
+				}
 				//update the other node if that node has not been
 				//finished and the new cost is less than the distance
-				if(!algNode.done && newCost < algNode.distance) {
-					//there's no update, so just remove from
-					//the queue, update it, and add it back in
-					queue.remove(algNode);
-					algNode.distance = newCost;
-					algNode.parent = currMin;
-					queue.add(algNode);
+				else if(newCost < distance[n] && queue.contains(n)) {
+					distance[n] = newCost;
+					scratch.parent[n] = u;
+					firstHop[n] = u == start ? n : firstHop[u];
+					queue.decreaseKey(n, newCost);
 				}
 			}
-			
-			//this node is now done
-			currMin.done = true;
-			
-			//get a new node to work on
-			currMin = queue.poll();
 		}
 		
 		//Setup routing table for the start node...
-		setupTables(graph, startNode, hostToDijkstraNode);
-		
-		//color
-		startNode.setColor(COLOR_NONE_NODE);
+		return setupTables(csr, startNode, scratch);
 	}
 	
 	/**
@@ -322,6 +709,9 @@ class ThreeTenNetwork {
 	 *  @return whether or not the routing is done
 	 */
 	public boolean route(Host dest) {
+		if(lazy != null && started) {
+			lazy.ensureRoutes(currentLoc);
+		}
 		Host nextHop = currentLoc.getRoutingTable().get(dest);
 		
 		if(nextHop == null) return false;